@@ -0,0 +1,992 @@
+// 성능 측정용 벤치마크
+// 컴파일 : javac -encoding UTF-8 -cp "lib/*" -d out src/Main.java bench/Bench.java
+// 실행 : java -cp "out:lib/*" Bench json 10000
+//        java -cp "out:lib/*" Bench scan 1000000
+//        java -cp "out:lib/*" Bench wal 20000
+//        java -cp "out:lib/*" Bench stress 2000 (동시 쓰기/스냅샷 검사, 실패하면 종료 코드 1)
+//        java -cp "out:lib/*" Bench suite 1000,100000,1000000
+//        java -cp "out:lib/*" Bench generate 1000 5 100000 (회원 수, 게시판 수, 게시물 수 : 현재 디렉토리의 db/ 에 더한다)
+//        java -cp "out:lib/*" Bench replay bench/replay.txt 8 30 (스크립트, 가상 사용자 수, 초)
+//
+// suite : JMH 를 쓸 수 없어서 같은 방식으로 직접 잰다.(워밍업 후 측정 반복, 처리량/지연 백분위/할당/GC)
+// 크기마다 임시 디렉토리에 DB 를 만들고 그 디렉토리에서 새 JVM 을 띄워 잰다.(앞 크기의 캐시/JIT 가 섞이지 않게)
+// -Dbench.warmup(기본값 2), -Dbench.iterations(3), -Dbench.time(반복 한번의 ms, 1000),
+// -Dbench.maxBuildRows(전체 빌드를 재는 최대 게시물 수, 100000), -Dssg.storage(기본값 log)
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class Bench {
+	public static void main(String[] args) throws Exception {
+		String benchName = args.length > 0 ? args[0] : "json";
+		int rowCount = args.length > 1 && benchName.matches("suite|replay") == false ? Integer.parseInt(args[1])
+				: 10000;
+
+		if (benchName.equals("json")) {
+			benchJson(rowCount);
+		} else if (benchName.equals("scan")) {
+			benchScan(rowCount);
+		} else if (benchName.equals("wal")) {
+			benchWal(rowCount);
+		} else if (benchName.equals("stress")) {
+			benchStress(rowCount);
+		} else if (benchName.equals("suite")) {
+			benchSuite(args.length > 1 ? args[1] : "1000,100000,1000000");
+		} else if (benchName.equals("suite-run")) {
+			runSuite(rowCount);
+		} else if (benchName.equals("generate")) {
+			generate(rowCount, Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+		} else if (benchName.equals("replay")) {
+			replay(args[1], args.length > 2 ? Integer.parseInt(args[2]) : 4,
+					args.length > 3 ? Integer.parseInt(args[3]) : 10);
+		} else {
+			System.out.println("알 수 없는 벤치마크 : " + benchName);
+		}
+	}
+
+	// 행 하나당 JSON 읽기/쓰기 비용 : 매번 ObjectMapper 생성(이전) vs JsonCodec(이후)
+	static void benchJson(int rowCount) throws IOException {
+		File dir = Files.createTempDirectory("bench-json").toFile();
+
+		// 워밍업
+		runJsonLegacy(dir, Math.min(rowCount, 2000));
+		runJsonCodec(dir, Math.min(rowCount, 2000));
+
+		long[] legacy = runJsonLegacy(dir, rowCount);
+		long[] codec = runJsonCodec(dir, rowCount);
+
+		System.out.printf("행 수 : %d\n", rowCount);
+		System.out.printf("쓰기 | 이전 %,d ns/행 | 이후 %,d ns/행\n", legacy[0] / rowCount, codec[0] / rowCount);
+		System.out.printf("읽기 | 이전 %,d ns/행 | 이후 %,d ns/행\n", legacy[1] / rowCount, codec[1] / rowCount);
+
+		deleteDir(dir);
+	}
+
+	private static long[] runJsonLegacy(File dir, int rowCount) throws IOException {
+		long startTime = System.nanoTime();
+		for (int id = 1; id <= rowCount; id++) {
+			new ObjectMapper().writeValue(new File(dir, id + ".json"), makeArticle(id));
+		}
+		long writeTime = System.nanoTime() - startTime;
+
+		startTime = System.nanoTime();
+		for (int id = 1; id <= rowCount; id++) {
+			new ObjectMapper().readValue(new File(dir, id + ".json"), Article.class);
+		}
+		long readTime = System.nanoTime() - startTime;
+
+		return new long[] { writeTime, readTime };
+	}
+
+	private static long[] runJsonCodec(File dir, int rowCount) throws IOException {
+		long startTime = System.nanoTime();
+		for (int id = 1; id <= rowCount; id++) {
+			JsonCodec.writeFile(dir.getPath() + "/" + id + ".json", makeArticle(id));
+		}
+		long writeTime = System.nanoTime() - startTime;
+
+		startTime = System.nanoTime();
+		for (int id = 1; id <= rowCount; id++) {
+			JsonCodec.readFile(dir.getPath() + "/" + id + ".json", Article.class);
+		}
+		long readTime = System.nanoTime() - startTime;
+
+		return new long[] { writeTime, readTime };
+	}
+
+	// 로그 저장소 전체 읽기(+ json 디코딩) 처리량 : 행마다 채널 read vs 세그먼트 메모리 매핑
+	static void benchScan(int rowCount) throws IOException {
+		File dir = Files.createTempDirectory("bench-scan").toFile();
+		SegmentLogStorage storage = new SegmentLogStorage(dir.getPath());
+
+		for (int id = 1; id <= rowCount; id++) {
+			storage.writeRow(id, JsonCodec.write(makeArticle(id)));
+		}
+
+		System.out.printf("행 수 : %d\n", rowCount);
+
+		for (int round = 0; round < 3; round++) {
+			storage.setMappedScan(false);
+			long readTime = timeScan(storage);
+			storage.setMappedScan(true);
+			long mappedTime = timeScan(storage);
+
+			System.out.printf("%d회 | read %,d 행/초 | mmap %,d 행/초\n", round + 1, rowsPerSec(rowCount, readTime),
+					rowsPerSec(rowCount, mappedTime));
+		}
+
+		deleteDir(dir);
+	}
+
+	private static long timeScan(SegmentLogStorage storage) throws IOException {
+		long startTime = System.nanoTime();
+		storage.scanRows((id, data) -> JsonCodec.read(data, Article.class));
+		return System.nanoTime() - startTime;
+	}
+
+	// 게시물 저장 처리량 : 저장소에 바로 쓰고 행마다 fsync vs 쓰기 전 로그(그룹 커밋)
+	// 앞의 세 가지는 saveRow 가 돌아오면 fsync 가 끝난 상태(갑자기 꺼져도 남는다), 마지막 async 는 그렇지 않다.
+	// 저장 = 호출한 쪽이 saveRow 를 끝낸 시점, 반영 = 저장소 반영(close)까지
+	static void benchWal(int rowCount) throws Exception {
+		System.out.printf("행 수 : %d\n", rowCount);
+
+		for (int round = 0; round < 2; round++) {
+			long[] direct = timeSaveRows(rowCount, false, false, 1);
+			long[] log = timeSaveRows(rowCount, true, false, 1);
+			long[] groupLog = timeSaveRows(rowCount, true, false, 8);
+			long[] asyncLog = timeSaveRows(rowCount, true, true, 1);
+
+			System.out.printf("%d회 | 바로 쓰기+fsync %,d 행/초 | 로그 %,d 행/초 | 로그(8 스레드) %,d 행/초, 반영 %,d 행/초"
+					+ " | 로그 async(fsync 안 기다림) %,d 행/초\n", round + 1, direct[0], log[0], groupLog[0], groupLog[1],
+					asyncLog[0]);
+		}
+	}
+
+	private static long[] timeSaveRows(int rowCount, boolean useLog, boolean async, int threadCount)
+			throws Exception {
+		File dir = Files.createTempDirectory("bench-wal").toFile();
+		Table<Article> table = new Table<>(Article.class, dir.getPath());
+		Map<String, Table<?>> tables = new HashMap<>();
+		tables.put(table.getTableName(), table);
+
+		System.setProperty("ssg.wal.async", String.valueOf(async));
+		WriteAheadLog writeAheadLog = useLog ? new WriteAheadLog(dir.getPath(), tables) : null;
+
+		long startTime = System.nanoTime();
+		Thread[] threads = new Thread[threadCount];
+
+		for (int i = 0; i < threadCount; i++) {
+			threads[i] = new Thread(() -> {
+				try {
+					for (int n = 0; n < rowCount / threadCount; n++) {
+						table.saveRow(new Article(1, 1, "제목", "내용"));
+
+						if (writeAheadLog == null) {
+							table.syncStorage();
+						}
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			threads[i].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		long saveTime = System.nanoTime() - startTime;
+
+		if (writeAheadLog != null) {
+			writeAheadLog.close();
+		}
+
+		long applyTime = System.nanoTime() - startTime;
+		deleteDir(dir);
+		System.clearProperty("ssg.wal.async");
+
+		return new long[] { rowsPerSec(rowCount, saveTime), rowsPerSec(rowCount, applyTime) };
+	}
+
+	// 동시 읽기/쓰기 검사 : DB(쓰기 전 로그 포함)에 쓰기 스레드가 저장/수정/삭제, 읽기 스레드가 행 조회와 스냅샷 읽기를 동시에 한다.
+	// 문제가 하나라도 있으면 내용을 출력하고 종료 코드 1 로 끝난다.
+	// - 반쯤 바뀐 행 : 제목과 내용에는 항상 같은 번호를 넣으므로 둘의 번호가 다르면 실패
+	// - 잃어버린 쓰기 : 행마다 쓰는 스레드가 하나뿐이므로 끝난 뒤의 행은 그 스레드가 마지막에 쓴 값이어야 한다.
+	//   (같은 DB 와 디렉토리를 다시 연 DB 둘 다 확인)
+	// - 어긋난 스냅샷 : 게시물의 작성자(회원을 먼저 저장)가 같은 스냅샷에 있어야 하고,
+	//   게시판 인덱스의 게시물 수가 전체 게시물 수와 같고, 다시 읽어도 같은 내용이어야 한다.
+	static void benchStress(int rowCount) throws Exception {
+		File dir = Files.createTempDirectory("bench-stress").toFile();
+		DB db = new DB(dir.getPath());
+		db.saveMember(new Member("stress", "stress", "stress"));
+		db.saveBoard(new Board("게시판1", "b1"));
+		db.saveBoard(new Board("게시판2", "b2"));
+
+		int threadCount = 4;
+		long durationMillis = Long.getLong("bench.time", 5000);
+		List<List<Integer>> ownedIds = new ArrayList<>();
+		// 행 id -> 마지막으로 쓴 번호(지운 행은 -1)
+		Map<Integer, Integer> expectedNos = new ConcurrentHashMap<>();
+
+		for (int i = 0; i < threadCount; i++) {
+			ownedIds.add(new ArrayList<>());
+		}
+
+		for (int n = 0; n < rowCount; n++) {
+			int id = db.saveArticle(new Article(n % 2 + 1, 1, "제목0", "내용0"));
+			ownedIds.get(n % threadCount).add(id);
+			expectedNos.put(id, 0);
+		}
+
+		long endTime = System.currentTimeMillis() + durationMillis;
+		AtomicLong readCount = new AtomicLong();
+		AtomicLong snapshotCount = new AtomicLong();
+		AtomicLong writeCount = new AtomicLong();
+		Queue<String> failures = new ConcurrentLinkedQueue<>();
+		List<Thread> threads = new ArrayList<>();
+
+		for (int i = 0; i < threadCount; i++) {
+			List<Integer> ids = ownedIds.get(i);
+
+			threads.add(new Thread(() -> {
+				Random random = new Random();
+				int no = 0;
+
+				while (System.currentTimeMillis() < endTime) {
+					int op = random.nextInt(10);
+					no++;
+
+					if (op < 6 && ids.isEmpty() == false) {
+						int id = ids.get(random.nextInt(ids.size()));
+						Article article = db.getArticlebyId(id);
+
+						if (article != null) {
+							db.modify("제목" + no, "내용" + no, article);
+							expectedNos.put(id, no);
+						}
+					} else if (op < 9) {
+						// 작성자를 먼저 저장한다.(스냅샷에 게시물이 보이면 작성자도 보여야 한다)
+						int memberId = db.saveMember(new Member("m" + Thread.currentThread().getId() + "-" + no, "pw",
+								"회원"));
+						int id = db.saveArticle(new Article(random.nextInt(2) + 1, memberId, "제목" + no, "내용" + no));
+						ids.add(id);
+						expectedNos.put(id, no);
+					} else if (ids.isEmpty() == false) {
+						int id = ids.remove(random.nextInt(ids.size()));
+						db.articleDelete(id);
+						expectedNos.put(id, -1);
+					}
+
+					writeCount.incrementAndGet();
+				}
+			}, "writer-" + i));
+
+			threads.add(new Thread(() -> {
+				Random random = new Random();
+
+				while (System.currentTimeMillis() < endTime) {
+					if (random.nextInt(10) < 8) {
+						checkArticle(db.getArticlebyId(random.nextInt(rowCount * 2) + 1), failures);
+						readCount.incrementAndGet();
+					} else {
+						checkSnapshot(db, failures);
+						snapshotCount.incrementAndGet();
+					}
+				}
+			}, "reader-" + i));
+		}
+
+		for (Thread thread : threads) {
+			thread.start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		checkExpectedRows(db, expectedNos, "실행 중인 DB", failures);
+		db.close();
+
+		DB reopenedDb = new DB(dir.getPath());
+		checkExpectedRows(reopenedDb, expectedNos, "다시 연 DB", failures);
+		reopenedDb.close();
+
+		System.out.printf("스레드 : 쓰기 %d, 읽기 %d | %d ms\n", threadCount, threadCount, durationMillis);
+		System.out.printf("쓰기 %,d 회/초 | 행 읽기 %,d 회/초 | 스냅샷 읽기 %,d 회\n", writeCount.get() * 1000 / durationMillis,
+				readCount.get() * 1000 / durationMillis, snapshotCount.get());
+
+		deleteDir(dir);
+
+		if (failures.isEmpty() == false) {
+			System.out.printf("실패 %d건\n", failures.size());
+			failures.stream().limit(20).forEach(System.out::println);
+			System.exit(1);
+		}
+
+		System.out.println("통과 : 반쯤 바뀐 행, 잃어버린 쓰기, 어긋난 스냅샷 없음");
+	}
+
+	private static void checkArticle(Article article, Queue<String> failures) {
+		if (article == null) {
+			return;
+		}
+
+		if (article.getTitle().substring(2).equals(article.getBody().substring(2)) == false) {
+			failures.add("반쯤 바뀐 행 : " + article.getId() + " " + article.getTitle() + " / " + article.getBody());
+		}
+	}
+
+	private static void checkSnapshot(DB db, Queue<String> failures) {
+		try (DBSnapshot snapshot = db.openSnapshot()) {
+			List<Article> articles = snapshot.getArticles();
+			int indexedCount = 0;
+
+			for (Board board : snapshot.getBoards()) {
+				indexedCount += snapshot.getArticleIdsByBoardCode(board.getCode()).size();
+			}
+
+			if (indexedCount != articles.size()) {
+				failures.add("스냅샷 인덱스 게시물 수 " + indexedCount + " != 게시물 수 " + articles.size());
+			}
+
+			for (Article article : articles) {
+				checkArticle(article, failures);
+
+				if (snapshot.getMember(article.getMemberId()) == null) {
+					failures.add("스냅샷에 " + article.getId() + "번 게시물의 작성자 " + article.getMemberId() + " 가 없음");
+				}
+			}
+
+			List<Article> rereadArticles = snapshot.getArticles();
+
+			if (rereadArticles.size() != articles.size()) {
+				failures.add("스냅샷 다시 읽기 게시물 수 " + rereadArticles.size() + " != " + articles.size());
+				return;
+			}
+
+			for (int i = 0; i < articles.size(); i++) {
+				if (articles.get(i).getTitle().equals(rereadArticles.get(i).getTitle()) == false) {
+					failures.add("스냅샷 다시 읽기에서 " + articles.get(i).getId() + "번 게시물이 바뀜");
+				}
+			}
+		}
+	}
+
+	private static void checkExpectedRows(DB db, Map<Integer, Integer> expectedNos, String dbName,
+			Queue<String> failures) {
+		int liveCount = 0;
+
+		for (Map.Entry<Integer, Integer> entry : expectedNos.entrySet()) {
+			Article article = db.getArticlebyId(entry.getKey());
+			int expectedNo = entry.getValue();
+
+			if (expectedNo < 0) {
+				if (article != null) {
+					failures.add(dbName + " : 지운 " + entry.getKey() + "번 게시물이 남아있음");
+				}
+
+				continue;
+			}
+
+			liveCount++;
+
+			if (article == null) {
+				failures.add(dbName + " : " + entry.getKey() + "번 게시물이 없음");
+			} else if (article.getTitle().equals("제목" + expectedNo) == false) {
+				failures.add(dbName + " : " + entry.getKey() + "번 게시물 " + article.getTitle() + " (마지막 쓰기 제목" + expectedNo
+						+ ")");
+			}
+		}
+
+		if (db.getArticles().size() != liveCount) {
+			failures.add(dbName + " : 게시물 수 " + db.getArticles().size() + " != " + liveCount);
+		}
+	}
+
+	// 크기마다 임시 디렉토리(템플릿 복사)에서 같은 클래스패스/JVM 옵션으로 suite-run 을 띄운다.
+	static void benchSuite(String sizes) throws Exception {
+		List<String> jvmArgs = ManagementFactory.getRuntimeMXBean().getInputArguments();
+
+		for (String size : sizes.split(",")) {
+			File dir = Files.createTempDirectory("bench-suite").toFile();
+			copyDir(Paths.get("site_template"), dir.toPath().resolve("site_template"));
+
+			List<String> command = new ArrayList<>();
+			command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+			command.addAll(jvmArgs);
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add(Bench.class.getName());
+			command.add("suite-run");
+			command.add(size.trim());
+
+			Process process = new ProcessBuilder(absoluteClassPath(command)).directory(dir).inheritIO().start();
+			int exitCode = process.waitFor();
+
+			if (exitCode != 0) {
+				System.out.println("suite-run " + size + " 실패 : " + exitCode);
+			}
+
+			deleteDir(dir);
+		}
+	}
+
+	// 자식 JVM 은 다른 디렉토리에서 돌기 때문에 클래스패스를 절대 경로로 바꾼다.(lib/* 같은 와일드카드 포함)
+	private static List<String> absoluteClassPath(List<String> command) {
+		int index = command.indexOf("-cp") + 1;
+		List<String> paths = new ArrayList<>();
+
+		for (String path : command.get(index).split(File.pathSeparator)) {
+			paths.add(new File(path).getAbsolutePath());
+		}
+
+		command.set(index, String.join(File.pathSeparator, paths));
+		return command;
+	}
+
+	private static void copyDir(Path from, Path to) throws IOException {
+		if (Files.exists(from) == false) {
+			return;
+		}
+
+		List<Path> paths = new ArrayList<>();
+		Files.walk(from).forEach(paths::add);
+
+		for (Path path : paths) {
+			Path target = to.resolve(from.relativize(path).toString());
+
+			if (Files.isDirectory(path)) {
+				Files.createDirectories(target);
+			} else {
+				Files.copy(path, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+	}
+
+	// 현재 디렉토리(임시 디렉토리)에서 DB 를 만들고 잰다.
+	static void runSuite(int articleCount) throws Exception {
+		if (System.getProperty("ssg.storage") == null) {
+			System.setProperty("ssg.storage", "log");
+		}
+
+		int memberCount = Math.max(10, articleCount / 100);
+		long startTime = System.nanoTime();
+		generateFixture(articleCount, memberCount);
+
+		System.out.printf("== 게시물 %,d개, 회원 %,d명 (저장소 %s, 준비 %,d ms) ==\n", articleCount, memberCount,
+				System.getProperty("ssg.storage"), (System.nanoTime() - startTime) / 1_000_000);
+		System.out.println("벤치마크 | 처리량(회/초) | 평균 | p50 | p99 | 최대 (us) | 할당(B/회) | GC(회, ms)");
+
+		Random random = new Random(1);
+
+		// Table : 캐시에 모두 올린 뒤의 조회와 저장(쓰기 전 로그 없이 저장소에 바로)
+		Table<Article> table = new Table<>(Article.class, "db", System.getProperty("ssg.storage"));
+		table.loadAll();
+		measure("Table.getRow", n -> table.getRow(random.nextInt(articleCount) + 1));
+		measure("Table.getRows", n -> table.getRows());
+		measure("Table.saveRow", n -> table.saveRow(new Article(n % 2 + 1, 1, "제목" + n, "내용" + n)));
+		// DB 가 같은 db/article 저장소와 lastId.txt 를 다시 여므로 이 테이블은 여기서 닫는다.(발급한 번호를 남긴다)
+		table.syncStorage();
+		table.close();
+
+		// DB : 실제 프로그램과 같은 구성(인덱스, 쓰기 전 로그, 통계/검색 알림)
+		DB db = Factory.getDB();
+		db.getArticles();
+		measure("DB.getArticlebyId", n -> db.getArticlebyId(random.nextInt(articleCount) + 1));
+		measure("DB.getArticlesByBoardCode", n -> db.getArticlesByBoardCode(n % 2 == 0 ? "notice" : "free"));
+		measure("DB.getMemberByLoginIdAndLoginPw", n -> {
+			int memberNo = random.nextInt(memberCount) + 1;
+			db.getMemberByLoginIdAndLoginPw("user" + memberNo, "pw" + memberNo);
+		});
+
+		// Util : 행 하나 크기의 json 파일 읽기/쓰기
+		Util.makeDir("bench-util");
+		Article article = makeArticle(1);
+		measure("Util.writeJsonFile", n -> Util.writeJsonFile("bench-util/" + n % 1000 + ".json", article));
+		measure("Util.getObjectFromJson",
+				n -> Util.getObjectFromJson("bench-util/" + random.nextInt(1000) + ".json", Article.class));
+
+		// BuildService : 전체 빌드는 한번만(크면 건너뛴다), 바뀐 것이 없는 증분 빌드는 반복해서 잰다.
+		BuildService buildService = Factory.getBuildService();
+		int maxBuildRows = Integer.getInteger("bench.maxBuildRows", 100000);
+
+		if (articleCount <= maxBuildRows) {
+			measureOnce("BuildService.buildSite(full)", () -> quietly(() -> buildService.buildSite(true)));
+			measure("BuildService.buildSite(변경 없음)", n -> quietly(() -> buildService.buildSite(false)));
+			measure("BuildService.buildSite(1건 수정)", n -> {
+				Article modifiedArticle = db.getArticlebyId(random.nextInt(articleCount) + 1);
+				db.modify("수정" + n, "내용" + n, modifiedArticle);
+				quietly(() -> buildService.buildSite(false));
+			});
+		} else {
+			System.out.printf("BuildService.buildSite | 건너뜀 (게시물 %,d개 > -Dbench.maxBuildRows %,d)\n", articleCount,
+					maxBuildRows);
+		}
+
+		db.close();
+	}
+
+	// 현재 디렉토리의 db/ 에 회원/게시판/게시물을 더한다.(이미 있으면 마지막 번호 다음부터)
+	// 처음이면 1번 회원은 관리자, 1/2번 게시판은 공지사항/자유게시판으로 프로그램이 만드는 것과 같게 만든다.
+	// 회원 아이디/비번은 user<번호>/pw<번호>, 게시물은 자유게시판에 많이 몰리고 제목/내용 길이는 실제 글처럼 퍼지게 만든다.
+	static void generate(int memberCount, int boardCount, int articleCount) throws IOException {
+		String storageType = System.getProperty("ssg.storage", "json");
+		Random random = new Random(Long.getLong("bench.seed", 1));
+		long startTime = System.nanoTime();
+
+		int lastMemberId = writeFixtureTable("member", storageType, memberCount, id -> {
+			Member member = id == 1 ? new Member("admin", "admin", "관리자")
+					: new Member("user" + id, "pw" + id, KoreanText.name(random));
+			member.setId(id);
+			return member;
+		});
+		int lastBoardId = writeFixtureTable("board", storageType, boardCount, id -> {
+			Board board = id == 1 ? new Board("공지시항", "notice")
+					: id == 2 ? new Board("자유게시판", "free") : new Board("게시판" + id, "board" + id);
+			board.setId(id);
+			return board;
+		});
+		long now = System.currentTimeMillis();
+
+		writeFixtureTable("article", storageType, articleCount, id -> {
+			int boardId = pickBoardId(random, lastBoardId);
+			int memberId = boardId == 1 || lastMemberId < 2 ? 1 : random.nextInt(lastMemberId - 1) + 2;
+			Article article = new Article(boardId, memberId, KoreanText.title(random), KoreanText.body(random));
+			article.setId(id);
+			// 최근 1년 안에 고르게
+			article.setRegDate(String.format("%tF %<tT", now - (long) (random.nextDouble() * 365 * 86_400_000L)));
+			return article;
+		});
+
+		System.out.printf("회원 %,d명, 게시판 %,d개, 게시물 %,d개를 만들었습니다. (저장소 %s, %,d ms)\n", memberCount, boardCount,
+				articleCount, storageType, (System.nanoTime() - startTime) / 1_000_000);
+	}
+
+	// 공지사항 5%, 자유게시판 60%, 나머지는 다른 게시판에 고르게(게시판이 두개뿐이면 자유게시판으로)
+	private static int pickBoardId(Random random, int lastBoardId) {
+		double value = random.nextDouble();
+
+		if (value < 0.05) {
+			return 1;
+		} else if (value < 0.65 || lastBoardId < 3) {
+			return Math.min(2, lastBoardId);
+		}
+
+		return random.nextInt(lastBoardId - 2) + 3;
+	}
+
+	// 그럴듯한 한글 이름/제목/내용
+	static class KoreanText {
+		private static final String[] WORDS = { "오늘", "정말", "질문", "있습니다", "자바", "프로그램", "게시판", "사이트", "만들기",
+				"공부", "방법", "문제", "해결", "도움", "부탁", "드립니다", "코드", "오류", "확인", "다시", "처음", "시작", "후기", "정리",
+				"공유", "합니다", "어떻게", "하나요", "궁금", "점", "데이터", "파일", "저장", "읽기", "속도", "개선", "테스트", "결과",
+				"서버", "설정", "주말", "날씨", "점심", "추천", "맛집", "여행", "사진", "영화", "음악", "운동", "회사", "학교", "친구",
+				"가족", "생각", "이야기", "그리고", "하지만", "그래서", "조금", "많이", "빨리", "천천히", "새로운", "좋은", "나쁜",
+				"중요한", "간단한", "복잡한", "검색", "목록", "페이지", "빌드", "배포", "백업", "복원", "통계", "회원", "로그인" };
+		private static final String[] ENDINGS = { "입니다.", "했습니다.", "같아요.", "네요.", "합니다.", "일까요?", "좋겠어요." };
+		private static final String[] FAMILY_NAMES = { "김", "이", "박", "최", "정", "강", "조", "윤", "장", "임" };
+		private static final String[] GIVEN_NAMES = { "민준", "서연", "도윤", "하은", "지호", "서준", "지우", "예준", "수아", "현우" };
+
+		static String name(Random random) {
+			return FAMILY_NAMES[random.nextInt(FAMILY_NAMES.length)] + GIVEN_NAMES[random.nextInt(GIVEN_NAMES.length)];
+		}
+
+		// 평균 18자, 4 ~ 60자
+		static String title(Random random) {
+			int length = (int) Math.max(4, Math.min(60, 18 + random.nextGaussian() * 8));
+			return words(random, length, false);
+		}
+
+		// 로그 정규 분포 : 중간값 250자, 긴 글은 드물게 수천 자(최대 8000자)
+		static String body(Random random) {
+			int length = (int) Math.max(10, Math.min(8000, Math.exp(Math.log(250) + random.nextGaussian() * 0.9)));
+			return words(random, length, true);
+		}
+
+		private static String words(Random random, int length, boolean sentences) {
+			StringBuilder sb = new StringBuilder(length + 16);
+			int wordCount = 0;
+
+			while (sb.length() < length) {
+				if (sb.length() > 0) {
+					sb.append(' ');
+				}
+
+				sb.append(WORDS[random.nextInt(WORDS.length)]);
+				wordCount++;
+
+				if (sentences && wordCount % 6 == 0) {
+					sb.append(' ').append(ENDINGS[random.nextInt(ENDINGS.length)]);
+				}
+			}
+
+			return sb.toString();
+		}
+	}
+
+	// 부하 재생 : 스크립트(bench/replay.txt 형식)의 명령어를 가중치대로 골라 users 명이 seconds 초 동안 동시에 실행한다.
+	// 실제 프로그램과 같은 App.runCommand -> Controller.doAction 경로로 가고, 가상 사용자마다 세션과 입력(Scanner)을 따로 쓴다.
+	// 명령어가 출력하는 내용은 버리고 명령어 별 처리량과 지연 백분위만 출력한다.
+	static void replay(String scriptPath, int userCount, int seconds) throws Exception {
+		List<ReplayCommand> commands = ReplayCommand.parse(Files.readAllLines(Paths.get(scriptPath)));
+		int totalWeight = 0;
+
+		for (ReplayCommand command : commands) {
+			totalWeight += command.weight;
+		}
+
+		App app = new App();
+		DB db = Factory.getDB();
+		int memberCount = Integer.parseInt(db.getLastMemberId());
+		Map<String, LatencyHistogram> histograms = new java.util.concurrent.ConcurrentHashMap<>();
+		Map<String, AtomicLong> errorCounts = new java.util.concurrent.ConcurrentHashMap<>();
+		long endTime = System.nanoTime() + seconds * 1_000_000_000L;
+		int weightSum = totalWeight;
+		List<Thread> threads = new ArrayList<>();
+
+		for (int i = 0; i < userCount; i++) {
+			long seed = Long.getLong("bench.seed", 1) + i;
+
+			threads.add(new Thread(() -> {
+				Random random = new Random(seed);
+				Session session = new Session();
+				Factory.setThreadSession(session);
+
+				while (System.nanoTime() < endTime) {
+					ReplayCommand command = ReplayCommand.pick(commands, random.nextInt(weightSum));
+					int memberNo = memberCount < 2 ? 1 : random.nextInt(memberCount - 1) + 2;
+					Map<String, String> values = new HashMap<>();
+					values.put("article", String.valueOf(random.nextInt(Math.max(1,
+							Integer.parseInt(db.getLastArticleId()))) + 1));
+					values.put("loginId", "user" + memberNo);
+					values.put("loginPw", "pw" + memberNo);
+					values.put("title", KoreanText.title(random));
+					values.put("body", KoreanText.body(random));
+
+					// 로그인은 로그아웃 상태에서, 나머지는 로그인 상태에서(재는 시간에 넣지 않는다)
+					if (command.isLogin()) {
+						session.setLoginedMember(null);
+					} else if (session.isLogined() == false) {
+						session.setLoginedMember(db.getMember(memberNo));
+					}
+
+					Factory.setThreadScanner(new java.util.Scanner(command.getInput(values)));
+					long startTime = System.nanoTime();
+
+					try {
+						app.runCommand(command.getCommand(values));
+					} catch (RuntimeException e) {
+						errorCounts.computeIfAbsent(command.name, key -> new AtomicLong()).incrementAndGet();
+					}
+
+					histograms.computeIfAbsent(command.name, key -> new LatencyHistogram())
+							.record(System.nanoTime() - startTime);
+				}
+
+				Factory.setThreadScanner(null);
+				Factory.setThreadSession(null);
+			}, "replay-user-" + i));
+		}
+
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		long startTime = System.nanoTime();
+
+		try {
+			for (Thread thread : threads) {
+				thread.start();
+			}
+
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} finally {
+			System.setOut(out);
+		}
+
+		long nanos = System.nanoTime() - startTime;
+		long totalCount = 0;
+
+		System.out.printf("가상 사용자 %d명 | %d초 | 게시물 %s개, 회원 %d명\n", userCount, seconds, db.getLastArticleId(),
+				memberCount);
+		System.out.println("명령어 | 횟수 | 처리량(회/초) | 평균 | p50 | p90 | p99 | 최대 (ms) | 오류");
+
+		for (Map.Entry<String, LatencyHistogram> entry : new java.util.TreeMap<>(histograms).entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+			AtomicLong errorCount = errorCounts.get(entry.getKey());
+			totalCount += histogram.getCount();
+
+			System.out.printf("%s | %,d | %,.1f | %.3f | %.3f | %.3f | %.3f | %.3f | %d\n", entry.getKey(),
+					histogram.getCount(), histogram.getCount() * 1e9 / nanos, histogram.getMean() / 1e6,
+					histogram.getPercentile(0.5) / 1e6, histogram.getPercentile(0.9) / 1e6,
+					histogram.getPercentile(0.99) / 1e6, histogram.getMax() / 1e6,
+					errorCount == null ? 0 : errorCount.get());
+		}
+
+		System.out.printf("전체 | %,d | %,.1f\n", totalCount, totalCount * 1e9 / nanos);
+
+		db.close();
+	}
+
+	// 스크립트 한 줄 : 가중치 | 명령어 | 입력(명령어가 묻는 순서대로)...
+	// {article}(임의의 게시물 번호), {loginId}/{loginPw}(임의의 회원), {title}/{body}(임의의 글) 을 바꿔 넣는다.
+	static class ReplayCommand {
+		int weight;
+		String name;
+		String command;
+		List<String> inputs = new ArrayList<>();
+
+		static List<ReplayCommand> parse(List<String> lines) {
+			List<ReplayCommand> commands = new ArrayList<>();
+
+			for (String line : lines) {
+				line = line.trim();
+
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+
+				String[] parts = line.split("\\|");
+				ReplayCommand command = new ReplayCommand();
+				command.weight = Integer.parseInt(parts[0].trim());
+				command.command = parts[1].trim();
+
+				String[] commandBits = command.command.split(" ");
+				command.name = commandBits.length > 1 ? commandBits[0] + " " + commandBits[1] : commandBits[0];
+
+				for (int i = 2; i < parts.length; i++) {
+					command.inputs.add(parts[i].trim());
+				}
+
+				commands.add(command);
+			}
+
+			return commands;
+		}
+
+		static ReplayCommand pick(List<ReplayCommand> commands, int value) {
+			for (ReplayCommand command : commands) {
+				value -= command.weight;
+
+				if (value < 0) {
+					return command;
+				}
+			}
+
+			return commands.get(commands.size() - 1);
+		}
+
+		boolean isLogin() {
+			return name.equals("member login");
+		}
+
+		String getCommand(Map<String, String> values) {
+			return fill(command, values);
+		}
+
+		String getInput(Map<String, String> values) {
+			StringBuilder sb = new StringBuilder();
+
+			for (String input : inputs) {
+				sb.append(fill(input, values)).append('\n');
+			}
+
+			return sb.toString();
+		}
+
+		private static String fill(String text, Map<String, String> values) {
+			for (Map.Entry<String, String> entry : values.entrySet()) {
+				text = text.replace("{" + entry.getKey() + "}", entry.getValue());
+			}
+
+			return text;
+		}
+	}
+
+	// 저장소에 바로 써서 빠르게 만든다.(게시판 2개, 회원 memberCount 명, 게시물 articleCount 개)
+	private static void generateFixture(int articleCount, int memberCount) throws IOException {
+		String storageType = System.getProperty("ssg.storage");
+
+		writeFixtureTable("board", storageType, 2, id -> {
+			Board board = id == 1 ? new Board("공지시항", "notice") : new Board("자유게시판", "free");
+			board.setId(id);
+			return board;
+		});
+		writeFixtureTable("member", storageType, memberCount, id -> {
+			Member member = new Member("user" + id, "pw" + id, "회원" + id);
+			member.setId(id);
+			return member;
+		});
+		writeFixtureTable("article", storageType, articleCount, id -> {
+			Article article = new Article(id % 2 + 1, id % memberCount + 1, "제목" + id, "내용" + id);
+			article.setId(id);
+			article.setRegDate(String.format("2026-10-%02d 00:00:00", id % 28 + 1));
+			return article;
+		});
+	}
+
+	interface FixtureRow {
+		Object make(int id);
+	}
+
+	// 마지막 번호 다음부터 rowCount 행을 쓰고 새 마지막 번호를 돌려준다.
+	private static int writeFixtureTable(String tableName, String storageType, int rowCount, FixtureRow fixtureRow)
+			throws IOException {
+		String tableDirPath = "db/" + tableName;
+		String lastIdPath = tableDirPath + "/lastId.txt";
+		Files.createDirectories(Paths.get(tableDirPath));
+		TableStorage storage = storageType.equals("log") ? new SegmentLogStorage(tableDirPath)
+				: new JsonFileStorage(tableDirPath);
+		int lastId = Util.isFileExists(lastIdPath) ? Integer.parseInt(Util.getFileContents(lastIdPath).trim()) : 0;
+
+		for (int id = lastId + 1; id <= lastId + rowCount; id++) {
+			storage.writeRow(id, JsonCodec.write(fixtureRow.make(id)));
+		}
+
+		storage.sync();
+		Util.writeFileContents(lastIdPath, lastId + rowCount);
+
+		return lastId + rowCount;
+	}
+
+	interface BenchOp {
+		void run(int n) throws Exception;
+	}
+
+	interface BenchTask {
+		void run() throws Exception;
+	}
+
+	// 워밍업 반복 후 측정 반복, 반복 한번은 -Dbench.time ms 동안 op 를 계속 부른다.
+	// 할당은 이 스레드가 측정 반복 동안 할당한 바이트(ThreadMXBean), GC 는 모든 수집기의 횟수/시간 차이
+	static void measure(String name, BenchOp op) throws Exception {
+		int warmupCount = Integer.getInteger("bench.warmup", 2);
+		int iterationCount = Integer.getInteger("bench.iterations", 3);
+		long iterationNanos = Long.getLong("bench.time", 1000) * 1_000_000;
+		int n = 0;
+
+		for (int i = 0; i < warmupCount; i++) {
+			long endTime = System.nanoTime() + iterationNanos;
+
+			while (System.nanoTime() < endTime) {
+				op.run(n++);
+			}
+		}
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		long[] gcBefore = getGcCountAndTime();
+		long allocatedBefore = getAllocatedBytes();
+		long measuredNanos = 0;
+
+		for (int i = 0; i < iterationCount; i++) {
+			long iterationStart = System.nanoTime();
+			long endTime = iterationStart + iterationNanos;
+			long now = iterationStart;
+
+			while (now < endTime) {
+				op.run(n++);
+				long opEnd = System.nanoTime();
+				histogram.record(opEnd - now);
+				now = opEnd;
+			}
+
+			measuredNanos += now - iterationStart;
+		}
+
+		printResult(name, histogram, measuredNanos, getAllocatedBytes() - allocatedBefore, gcBefore);
+	}
+
+	// 한번만 재는 작업(전체 빌드 등), 할당은 모든 스레드의 합
+	static void measureOnce(String name, BenchTask task) throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+		long[] gcBefore = getGcCountAndTime();
+		long allocatedBefore = getAllThreadsAllocatedBytes();
+		long startTime = System.nanoTime();
+		task.run();
+		long nanos = System.nanoTime() - startTime;
+		histogram.record(nanos);
+
+		printResult(name, histogram, nanos, getAllThreadsAllocatedBytes() - allocatedBefore, gcBefore);
+	}
+
+	private static void printResult(String name, LatencyHistogram histogram, long measuredNanos, long allocatedBytes,
+			long[] gcBefore) {
+		long[] gcAfter = getGcCountAndTime();
+		long opCount = histogram.getCount();
+
+		System.out.printf("%s | %,.1f | %,.1f | %,.1f | %,.1f | %,.1f | %,d | %d, %d\n", name,
+				opCount * 1e9 / Math.max(measuredNanos, 1), histogram.getMean() / 1000, histogram.getPercentile(0.5) / 1000.0,
+				histogram.getPercentile(0.99) / 1000.0, histogram.getMax() / 1000.0,
+				allocatedBytes / Math.max(opCount, 1), gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+	}
+
+	private static long getAllocatedBytes() {
+		return getThreadMXBean().getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	// 빌드 렌더링 스레드까지(끝난 스레드의 할당은 빠진다)
+	private static long getAllThreadsAllocatedBytes() {
+		long total = 0;
+
+		for (long bytes : getThreadMXBean().getThreadAllocatedBytes(getThreadMXBean().getAllThreadIds())) {
+			total += Math.max(bytes, 0);
+		}
+
+		return total;
+	}
+
+	private static com.sun.management.ThreadMXBean getThreadMXBean() {
+		return (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	}
+
+	private static long[] getGcCountAndTime() {
+		long count = 0;
+		long time = 0;
+
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(gc.getCollectionCount(), 0);
+			time += Math.max(gc.getCollectionTime(), 0);
+		}
+
+		return new long[] { count, time };
+	}
+
+	// 빌드가 출력하는 진행 메시지는 버린다.
+	private static void quietly(BenchTask task) throws Exception {
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+		try {
+			task.run();
+		} finally {
+			System.setOut(out);
+		}
+	}
+
+	static long rowsPerSec(long rowCount, long nanos) {
+		return rowCount * 1_000_000_000L / Math.max(nanos, 1);
+	}
+
+	static Article makeArticle(int id) {
+		Article article = new Article(id % 2 + 1, 1, "제목" + id, "내용" + id);
+		article.setId(id);
+		return article;
+	}
+
+	static void deleteDir(File dir) {
+		File[] files = dir.listFiles();
+
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory()) {
+					deleteDir(file);
+				} else {
+					file.delete();
+				}
+			}
+		}
+
+		dir.delete();
+	}
+}
@@ -5,6 +5,9 @@
 // 3. member join : 회원가입
 // 4. member whoami : 로그인 한 대상 이름 확인
 //
+// 일괄 실행 : java Main --batch 스크립트 파일
+// 한 줄에 명령어 하나, 묻는 값은 | 뒤에 순서대로 (예 : article write 2 | 제목 | 내용, member login | admin | admin)
+//
 // article 기능
 // 1. article write 게시판 번호: 게시글 작성(자유/공지 구분)
 // 2. article delete 게시물 번호 : 게시물 삭제 기능
@@ -12,25 +15,117 @@
 // 4. article list : 게시물 리스팅 기능(구분없이)
 // 4-1. article list 게시판 번호 : 미 구현
 // 5. article detail 게시물 번호 : 게시물 상세보기 기능
+// 6. article search 검색어 [게시판 번호] : 제목/내용 검색(관련도 순, 검색어는 여러 단어 가능)
 //
 // site 기능
-// 1. build site : html 파일 생성(수동)
-// 2. build startAutoSite : html 파일 생성(자동)
-// 3. build stopAutoSite : 미 구현(만들기는 했으나, 입력해도 멈추지 않음.)
-
+// 1. build site : html 파일 생성(수동, 바뀐 페이지만), build site full : 전체 다시 생성
+// 1-1. build site 는 search.html 과 검색 색인 조각(site/article/search/)도 만든다.(바뀐 게시물의 조각만)
+// 2. build start : html 파일 생성(자동, DB 가 바뀌었을 때만)
+// 2-1. build start watch : db/, site_template/ 파일 변경을 감시해서 바로 반영
+// 3. build stop : 자동 생성 멈춤
+// 3-1. build status : 자동 생성 상태
+// 4. build parallel 숫자 : 렌더링 병렬도 변경
+// 5. build pagesize 숫자 : 게시판 리스트 한 페이지의 게시물 수 변경
+//
+// system 기능
+// 1. system cache : 테이블 캐시 적중/미스 현황
+// 2. system backup : 마지막 백업 이후 바뀐 행만 백업(처음이면 전체), system backup full : 전체 백업
+// 3. system restore : 마지막 백업으로 복원, system restore 번호 : 그 번호의 백업 시점으로 복원
+// 4. system verify : 통계 카운터를 전체 조회 결과와 비교(다르면 바로잡는다)
+// 5. system stats : 명령어 별 소요 시간 분포, 테이블 읽기/쓰기, 빌드 지표(metrics.json 에도 주기적으로 쓴다)
+
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.stream.IntStream;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -41,10 +136,24 @@ import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
 
 class Main {
 	public static void main(String[] args) {
-		
+		// 일괄 실행 : Main --batch 스크립트 파일
+		if (args.length >= 2 && args[0].equals("--batch")) {
+			App app = new App();
+			new BatchRunner(app).run(args[1]);
+
+			// 로그에 커밋된 기록이 테이블 저장소에 모두 반영될 때까지
+			long startTime = System.nanoTime();
+			Factory.getDB().close();
+			System.out.printf("저장소 반영 완료 (%,d ms)\n", (System.nanoTime() - startTime) / 1_000_000);
+			return;
+		}
+
 		DBConnection dbConn = new DBConnection();
 
 		dbConn.connect();
@@ -97,13 +206,23 @@ class Factory {
 	private static Session session;
 	private static DB db;
 	private static BuildService buildService;
+	private static TemplateRepository templateRepository;
 	private static ArticleService articleService;
 	private static ArticleDao articleDao;
 	private static MemberService memberService;
 	private static MemberDao memberDao;
 	private static Scanner scanner;
+	// 스레드 별로 바꿔 끼우는 세션/입력(부하 재생에서 가상 사용자마다 따로 쓴다), 없으면 공용 세션/입력
+	private static ThreadLocal<Session> threadSession = new ThreadLocal<>();
+	private static ThreadLocal<Scanner> threadScanner = new ThreadLocal<>();
 
 	public static Session getSession() {
+		Session currentThreadSession = threadSession.get();
+
+		if (currentThreadSession != null) {
+			return currentThreadSession;
+		}
+
 		if (session == null) {
 			session = new Session();
 		}
@@ -112,6 +231,12 @@ class Factory {
 	}
 
 	public static Scanner getScanner() {
+		Scanner currentThreadScanner = threadScanner.get();
+
+		if (currentThreadScanner != null) {
+			return currentThreadScanner;
+		}
+
 		if (scanner == null) {
 			scanner = new Scanner(System.in);
 		}
@@ -119,6 +244,24 @@ class Factory {
 		return scanner;
 	}
 
+	// null 이면 공용 세션으로 돌아간다.
+	public static void setThreadSession(Session session) {
+		if (session == null) {
+			threadSession.remove();
+		} else {
+			threadSession.set(session);
+		}
+	}
+
+	// null 이면 공용 입력으로 돌아간다.
+	public static void setThreadScanner(Scanner scanner) {
+		if (scanner == null) {
+			threadScanner.remove();
+		} else {
+			threadScanner.set(scanner);
+		}
+	}
+
 	public static DB getDB() {
 		if (db == null) {
 			db = new DB();
@@ -158,6 +301,14 @@ class Factory {
 		return memberDao;
 	}
 
+	public static TemplateRepository getTemplateRepository() {
+		if (templateRepository == null) {
+			templateRepository = new TemplateRepository("site_template");
+		}
+
+		return templateRepository;
+	}
+
 	public static BuildService getBuildService() {
 		if (buildService == null) {
 			buildService = new BuildService();
@@ -178,6 +329,7 @@ class App {
 		controllers.put("build", new BuildController());
 		controllers.put("article", new ArticleController());
 		controllers.put("member", new MemberController());
+		controllers.put("system", new SystemController());
 	}
 
 	public App() {
@@ -197,7 +349,30 @@ class App {
 		Factory.getSession().setLoginedMember(Factory.getMemberService().getMember(1));
 	}
 
+	// 명령어 하나를 컨트롤러에 넘긴다.(처리한 명령어면 true)
+	public boolean runCommand(String command) {
+		Request reqeust = new Request(command);
+
+		if (reqeust.isValidRequest() == false) {
+			return false;
+		}
+
+		if (controllers.containsKey(reqeust.getControllerName()) == false) {
+			return false;
+		}
+
+		// 명령어 별 소요 시간(입력을 기다리는 명령어는 입력 시간도 포함)
+		long startTime = System.nanoTime();
+		controllers.get(reqeust.getControllerName()).doAction(reqeust);
+		Metrics.recordNanos("command." + reqeust.getControllerName() + "." + reqeust.getActionName(),
+				System.nanoTime() - startTime);
+
+		return true;
+	}
+
 	public void start() {
+		// 주기적으로 metrics.json 에 지표를 쓴다.
+		Metrics.startDump();
 
 		while (true) {
 			System.out.printf("명령어 : ");
@@ -211,20 +386,206 @@ class App {
 				break;
 			}
 
-			Request reqeust = new Request(command);
+			// 저장소/로그에 쓰지 못한 변경은 반영되지 않았으므로 알리고 다음 명령어를 받는다.
+			try {
+				runCommand(command);
+			} catch (UncheckedIOException e) {
+				System.out.println("저장하지 못했습니다 : " + e.getCause().getMessage());
+			}
+		}
 
-			if (reqeust.isValidRequest() == false) {
-				continue;
+		Factory.getScanner().close();
+		Metrics.stopDump();
+		// 쓰기 전 로그에 남은 기록 반영
+		Factory.getDB().close();
+	}
+}
+
+// BatchRunner
+// 명령어 스크립트 파일을 묻지 않고 실행한다.(Main --batch 파일)
+// 한 줄 : 명령어 | 입력 | 입력 ... (입력은 명령어가 묻는 순서대로, 예) article write 2 | 제목 | 내용, member login | admin | admin)
+// 이어지는 article write 는 묶어서(-Dssg.batch.size, 기본값 1000) 번호 발급 한번, 저장소 반영 기다림 한번으로 저장한다.
+// 명령어가 출력하는 내용은 버리고 끝에 명령어 별 횟수와 오류 줄만 요약해서 출력한다.
+class BatchRunner {
+	private static final int MAX_PRINTED_ERROR_COUNT = 10;
+
+	private App app;
+	private ArticleService articleService;
+	private int batchSize;
+	private List<Article> pendingArticles;
+	private Map<String, Integer> commandCounts;
+	private List<String> errors;
+	private int writtenArticleCount;
+	private int batchCount;
+
+	BatchRunner(App app) {
+		this.app = app;
+		this.articleService = Factory.getArticleService();
+		this.batchSize = Integer.getInteger("ssg.batch.size", 1000);
+		this.pendingArticles = new ArrayList<>();
+		this.commandCounts = new TreeMap<>();
+		this.errors = new ArrayList<>();
+	}
+
+	public void run(String filePath) {
+		List<String> lines;
+
+		try {
+			lines = Files.readAllLines(Paths.get(filePath), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			System.out.println("스크립트 파일을 읽을 수 없습니다 : " + filePath);
+			return;
+		}
+
+		long startTime = System.nanoTime();
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+		try {
+			for (int i = 0; i < lines.size(); i++) {
+				String line = lines.get(i).trim();
+
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+
+				runLine(i + 1, line);
 			}
 
-			if (controllers.containsKey(reqeust.getControllerName()) == false) {
-				continue;
+			flushArticles();
+		} finally {
+			System.setOut(out);
+			Factory.setThreadScanner(null);
+		}
+
+		printSummary(System.nanoTime() - startTime);
+	}
+
+	private void runLine(int lineNo, String line) {
+		String[] parts = line.split("\\|");
+		String command = parts[0].trim();
+		List<String> inputs = new ArrayList<>();
+
+		for (int i = 1; i < parts.length; i++) {
+			inputs.add(parts[i].trim());
+		}
+
+		Request reqeust = new Request(command);
+
+		if (reqeust.isValidRequest() == false) {
+			errors.add(lineNo + "번째 줄 | 명령어가 아닙니다 : " + command);
+			return;
+		}
+
+		String commandName = reqeust.getControllerName() + " " + reqeust.getActionName();
+
+		// 횟수는 모아둔 글이 실제로 저장될 때(flushArticles) 센다.
+		if (commandName.equals("article write")) {
+			addArticle(lineNo, reqeust, inputs);
+			return;
+		}
+
+		// 다른 명령어가 앞의 글을 볼 수 있게 모아둔 글을 먼저 저장한다.
+		flushArticles();
+
+		StringBuilder input = new StringBuilder();
+
+		for (String value : inputs) {
+			input.append(value).append('\n');
+		}
+
+		Factory.setThreadScanner(new Scanner(input.toString()));
+
+		try {
+			if (app.runCommand(command)) {
+				commandCounts.merge(commandName, 1, Integer::sum);
+			} else {
+				errors.add(lineNo + "번째 줄 | 알 수 없는 명령어입니다 : " + command);
 			}
+		} catch (RuntimeException e) {
+			errors.add(lineNo + "번째 줄 | " + e);
+		}
+	}
+
+	// article write 와 같은 규칙(로그인, 공지사항은 관리자만)을 확인하고 모아둔다.
+	private void addArticle(int lineNo, Request reqeust, List<String> inputs) {
+		Member loginedMember = Factory.getSession().getLoginedMember();
+
+		if (loginedMember == null) {
+			errors.add(lineNo + "번째 줄 | 로그인 한 회원만 가능합니다.");
+			return;
+		}
 
-			controllers.get(reqeust.getControllerName()).doAction(reqeust);
+		if (inputs.size() < 2) {
+			errors.add(lineNo + "번째 줄 | 제목과 내용이 필요합니다.");
+			return;
 		}
 
-		Factory.getScanner().close();
+		Board board = null;
+
+		try {
+			board = articleService.getBoard(Integer.parseInt(reqeust.getArg1()));
+		} catch (NumberFormatException e) {
+		}
+
+		if (board == null) {
+			errors.add(lineNo + "번째 줄 | 게시판이 없습니다 : " + reqeust.getArg1());
+			return;
+		}
+
+		if (board.getCode().equals("notice") && loginedMember.getName().equals("관리자") == false) {
+			errors.add(lineNo + "번째 줄 | 공지사항은 관리자만 작성 가능합니다.");
+			return;
+		}
+
+		pendingArticles.add(new Article(board.getId(), loginedMember.getId(), inputs.get(0), inputs.get(1)));
+
+		if (pendingArticles.size() >= batchSize) {
+			flushArticles();
+		}
+	}
+
+	private void flushArticles() {
+		if (pendingArticles.isEmpty()) {
+			return;
+		}
+
+		List<Article> articles = pendingArticles;
+		pendingArticles = new ArrayList<>();
+
+		try {
+			articleService.writeAll(articles);
+		} catch (RuntimeException e) {
+			errors.add("게시물 " + articles.size() + "건을 저장하지 못했습니다 | " + e);
+			return;
+		}
+
+		commandCounts.merge("article write", articles.size(), Integer::sum);
+		writtenArticleCount += articles.size();
+		batchCount++;
+	}
+
+	private void printSummary(long nanos) {
+		int commandCount = 0;
+
+		System.out.println("== 일괄 실행 요약 ==");
+		System.out.println("명령어 | 횟수");
+		for (Map.Entry<String, Integer> entry : commandCounts.entrySet()) {
+			System.out.printf("%s | %,d\n", entry.getKey(), entry.getValue());
+			commandCount += entry.getValue();
+		}
+
+		System.out.printf("게시물 저장 %,d건 (묶음 %,d개)\n", writtenArticleCount, batchCount);
+
+		if (errors.isEmpty() == false) {
+			System.out.printf("오류 %,d건\n", errors.size());
+			for (String error : errors.subList(0, Math.min(MAX_PRINTED_ERROR_COUNT, errors.size()))) {
+				System.out.println(error);
+			}
+		}
+
+		System.out.printf("명령어 %,d개 | %,d ms | %,d 명령어/초\n", commandCount, nanos / 1_000_000,
+				commandCount * 1_000_000_000L / Math.max(nanos, 1));
 	}
 }
 
@@ -299,6 +660,17 @@ class Request {
 		return arg3;
 	}
 
+	// 액션 이름 뒤의 나머지 전체(띄어쓰기가 들어가는 값), 없으면 null
+	public String getArgs() {
+		String[] requestStrBits = requestStr.split(" ", 3);
+
+		if (requestStrBits.length < 3 || requestStrBits[2].trim().isEmpty()) {
+			return null;
+		}
+
+		return requestStrBits[2].trim();
+	}
+
 	public void setArg3(String arg3) {
 		this.arg3 = arg3;
 	}
@@ -327,19 +699,52 @@ class ArticleController extends Controller {
 			actionList(reqeust, reqeust.getArg1());
 		} else if (reqeust.getActionName().equals("detail")) {
 			actionDetail(reqeust, reqeust.getArg1());
+		} else if (reqeust.getActionName().equals("search")) {
+			actionSearch(reqeust, reqeust.getArgs());
+		}
+	}
+
+	// 게시물 검색 : article search 검색어 [게시판 번호], 검색어가 없으면 입력받는다.(띄어쓰기 포함)
+	// 검색어의 모든 단어로 찾는다. 두 단어 이상이고 마지막 단어가 숫자면 게시판 번호로 본다.
+	// (숫자로 끝나는 검색어는 검색어 없이 article search 로 입력받으면 그대로 찾는다)
+	private void actionSearch(Request reqeust, String args) {
+		String query = args;
+		int boardId = 0;
+
+		if (query == null) {
+			System.out.printf("검색어 : ");
+			query = Factory.getScanner().nextLine();
+		} else {
+			int lastSpaceIndex = query.lastIndexOf(' ');
+
+			if (lastSpaceIndex > 0 && query.substring(lastSpaceIndex + 1).matches("[0-9]{1,9}")) {
+				boardId = Integer.parseInt(query.substring(lastSpaceIndex + 1));
+				query = query.substring(0, lastSpaceIndex).trim();
+			}
+		}
+
+		List<Article> articles = articleService.search(query, boardId, 20);
+
+		if (articles.isEmpty()) {
+			System.out.println("검색 결과가 없습니다.");
+			return;
+		}
+
+		System.out.println("번호 | 게시판 | 제목 | 작성 날짜");
+		for (Article article : articles) {
+			System.out.println(article.getId() + " | " + article.getBoardId() + " | " + article.getTitle() + " | "
+					+ article.getRegDate());
 		}
 	}
 
 	// 게시물 상세보기
 	private void actionDetail(Request reqeust, String arg1) {
-		
-		String filePath = "db\\article\\" + arg1 + ".json";
 
 		int id = Integer.parseInt(arg1);
 		
 		Article article = Factory.getArticleService().getArticlebyId(id);
 		
-			if (Util.isFileExists(filePath) && article.getId() == id ) {
+			if (article != null) {
 				try {
 					System.out.println("게시물 번호 : " + article.getId());
 					System.out.println("제목 : " + article.getTitle());
@@ -361,10 +766,11 @@ class ArticleController extends Controller {
 		if (Factory.getSession().getLoginedMember() == null) {
 			System.out.println("로그인 한 회원만 가능합니다.");
 		} else {
-			String filePath = "db\\article\\" + arg1 + ".json";
+			int id = Integer.parseInt(arg1);
 
-			if (Util.isFileExists(filePath)) {
-				articleService.articleDelete(filePath);
+			if (articleService.getArticlebyId(id) != null) {
+				articleService.articleDelete(id);
+				System.out.printf("%d번 글이 삭제되었습니다.\n", id);
 			} else {
 				System.out.println("해당 파일이 존재하지 않습니다.");
 			}
@@ -403,13 +809,11 @@ class ArticleController extends Controller {
 		if (Factory.getSession().getLoginedMember() == null) {
 			System.out.println("로그인 한 회원만 가능합니다.");
 		} else {
-			String filePath = "db\\article\\" + arg1 + ".json";
-
-			if (Util.isFileExists(filePath)) {
+			int id = Integer.parseInt(arg1);
 
-				int id = Integer.parseInt(arg1);
+			Article article = Factory.getArticleService().getArticlebyId(id);
 
-				Article article = Factory.getArticleService().getArticlebyId(id);
+			if (article != null) {
 
 				System.out.println("수정 할 제목 : ");
 				String title = Factory.getScanner().nextLine();
@@ -482,10 +886,11 @@ class ArticleController extends Controller {
 // 사이트 관련 컨트롤러(html 생성)
 class BuildController extends Controller {
 	private BuildService buildService;
-	boolean workstarted;
+	private AutoSiteScheduler autoSiteScheduler;
 
 	BuildController() {
 		buildService = Factory.getBuildService();
+		autoSiteScheduler = new AutoSiteScheduler(buildService, Factory.getDB());
 	}
 
 	@Override
@@ -494,42 +899,339 @@ class BuildController extends Controller {
 			if ( Factory.getSession().getLoginedMember() == null ) {
 				System.out.println("로그인이 필요합니다.");
 			} else {
-				actionSite(reqeust);
-				actionCreatMain();
-				actionCreatLogin();
-				actionCreatStatistics();
+				actionSite(reqeust, reqeust.getArg1());
 			}
 		} else if (reqeust.getActionName().equals("start")) {
-			actionAutoSite(true);
+			actionAutoSite(true, "watch".equals(reqeust.getArg1()));
 		} else if (reqeust.getActionName().equals("stop")) {
-			actionAutoSite(false);
+			actionAutoSite(false, false);
+		} else if (reqeust.getActionName().equals("status")) {
+			actionAutoSiteStatus(reqeust);
+		} else if (reqeust.getActionName().equals("parallel")) {
+			actionParallel(reqeust, reqeust.getArg1());
+		} else if (reqeust.getActionName().equals("pagesize")) {
+			actionPageSize(reqeust, reqeust.getArg1());
+		}
+	}
+
+	// build pagesize 숫자 : 게시판 리스트 한 페이지의 게시물 수 변경
+	private void actionPageSize(Request reqeust, String arg1) {
+		if (arg1 != null) {
+			int listPageSize = parsePositiveNumber(arg1);
+
+			if (listPageSize <= 0) {
+				System.out.println("사용법 : build pagesize 숫자(1 이상)");
+				return;
+			}
+
+			buildService.setListPageSize(listPageSize);
+		}
+
+		System.out.println("게시판 리스트 페이지 크기 : " + buildService.getListPageSize());
+	}
+
+	// 숫자가 아니거나 1 보다 작으면 0
+	private int parsePositiveNumber(String arg) {
+		try {
+			return Math.max(0, Integer.parseInt(arg));
+		} catch (NumberFormatException e) {
+			return 0;
 		}
 	}
 
-	private void actionCreatStatistics() {
-		buildService.CreatStatistics();
+	// build parallel 숫자 : 렌더링 병렬도 변경(1 이면 순서대로)
+	private void actionParallel(Request reqeust, String arg1) {
+		if (arg1 != null) {
+			int parallelism = parsePositiveNumber(arg1);
+
+			if (parallelism <= 0) {
+				System.out.println("사용법 : build parallel 숫자(1 이상, 1 이면 순서대로)");
+				return;
+			}
+
+			buildService.setParallelism(parallelism);
+		}
+
+		System.out.println("렌더링 병렬도 : " + buildService.getParallelism());
 	}
 
-	void actionAutoSite(boolean workstarted) {
+	// build start : DB 변경 확인, build start watch : 파일 감시도 함께
+	void actionAutoSite(boolean workstarted, boolean watch) {
 		if (workstarted == true) {
-			System.out.println("AutoSite 기능이 실행 됩니다.");
-			Util.startAutoSite(workstarted);
+			if (watch ? autoSiteScheduler.startWatching() : autoSiteScheduler.start()) {
+				System.out.println("AutoSite 기능이 실행 됩니다.");
+			} else {
+				System.out.println("AutoSite 기능이 이미 실행 중입니다.");
+			}
 		} else if (workstarted != true) {
-			System.out.println("AutoSite 기능이 종료 됩니다.");
-			Util.startAutoSite(workstarted);
+			if (autoSiteScheduler.stop()) {
+				System.out.println("AutoSite 기능이 종료 됩니다.");
+			} else {
+				System.out.println("AutoSite 기능이 실행 중이 아닙니다.");
+			}
+		}
+	}
+
+	private void actionAutoSiteStatus(Request reqeust) {
+		System.out.println(autoSiteScheduler.getStatus());
+	}
+
+	// build site : 바뀐 페이지만, build site full : 전체 다시 생성
+	private void actionSite(Request reqeust, String arg1) {
+		buildService.buildAll("full".equals(arg1));
+	}
+}
+
+// AutoSiteScheduler
+// 스케줄 스레드 하나로 DB 변경 여부를 주기적으로 확인하고,
+// 마지막 변경 후 잠잠해지면(디바운스) 사이트를 다시 만든다. 변경이 없으면 아무것도 그리지 않는다.
+// 감시 모드에서는 db/, site_template/ 의 파일 변경 알림을 받자마자 짧게 모아서 다시 만든다.
+class AutoSiteScheduler {
+	private static final long CHECK_INTERVAL_MILLIS = 1000;
+	private static final long DEBOUNCE_MILLIS = 2000;
+	private static final long WATCH_DEBOUNCE_MILLIS = 100;
+
+	private BuildService buildService;
+	private DB db;
+	private ScheduledExecutorService executor;
+	private ScheduledFuture<?> checkTask;
+	private SiteWatcher siteWatcher;
+	// 마지막으로 빌드한 시점의 DB 버전, 템플릿 버전
+	// 스케줄 스레드만 쓰고 getStatus 가 다른 스레드에서 읽는 값은 volatile
+	private volatile long builtVersion = -1;
+	private long builtTemplateVersion;
+	private AtomicLong templateVersion = new AtomicLong();
+	private long lastSeenVersion = -1;
+	private long lastChangeTime;
+	// 반영되지 않은 첫 파일 변경 알림 시각(nanoTime), 0 이면 없음
+	private long pendingSince;
+	private volatile long lastLatencyMillis = -1;
+	private volatile int buildCount;
+	private volatile int skippedBuildCount;
+	private volatile String lastBuildTime = "-";
+
+	AutoSiteScheduler(BuildService buildService, DB db) {
+		this.buildService = buildService;
+		this.db = db;
+		this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "auto-site");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public synchronized boolean start() {
+		if (isRunning()) {
+			return false;
+		}
+
+		// 고정 지연 실행이라 한 번의 확인/빌드가 끝나야 다음 확인이 시작된다.
+		checkTask = executor.scheduleWithFixedDelay(() -> check(DEBOUNCE_MILLIS), 0, CHECK_INTERVAL_MILLIS,
+				TimeUnit.MILLISECONDS);
+
+		return true;
+	}
+
+	// 파일 감시를 함께 켠다.(다른 프로세스가 db/ 에 직접 쓴 행도 반영된다)
+	public synchronized boolean startWatching() {
+		boolean started = start();
+
+		if (siteWatcher != null) {
+			return started;
+		}
+
+		try {
+			siteWatcher = new SiteWatcher(db, this);
+			siteWatcher.start();
+			return true;
+		} catch (IOException e) {
+			System.out.println("파일 감시를 시작할 수 없습니다.");
+			e.printStackTrace();
+			return started;
+		}
+	}
+
+	public synchronized boolean stop() {
+		if (isRunning() == false) {
+			return false;
+		}
+
+		checkTask.cancel(false);
+		checkTask = null;
+
+		if (siteWatcher != null) {
+			siteWatcher.close();
+			siteWatcher = null;
+		}
+
+		return true;
+	}
+
+	public synchronized boolean isRunning() {
+		return checkTask != null;
+	}
+
+	// 감시 스레드에서 호출 : 행이 바뀌었으면 DB 캐시는 이미 갱신된 상태
+	void onFileChanged(boolean templateChanged) {
+		if (templateChanged) {
+			templateVersion.incrementAndGet();
+		}
+
+		executor.execute(() -> {
+			if (pendingSince == 0) {
+				pendingSince = System.nanoTime();
+			}
+
+			lastSeenVersion = db.getVersion();
+			lastChangeTime = System.currentTimeMillis();
+		});
+		executor.schedule(() -> check(WATCH_DEBOUNCE_MILLIS), WATCH_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	private void check(long debounceMillis) {
+		try {
+			long version = db.getVersion();
+			long currentTemplateVersion = templateVersion.get();
+			long now = System.currentTimeMillis();
+
+			if (version != lastSeenVersion) {
+				lastSeenVersion = version;
+				lastChangeTime = now;
+			}
+
+			if (version == builtVersion && currentTemplateVersion == builtTemplateVersion) {
+				pendingSince = 0;
+				return;
+			}
+
+			if (now - lastChangeTime < debounceMillis) {
+				return;
+			}
+
+			System.out.println("AutoSite : 변경된 내용으로 사이트를 다시 만듭니다.");
+
+			if (buildService.buildAllIfIdle(false)) {
+				builtVersion = version;
+				builtTemplateVersion = currentTemplateVersion;
+				buildCount++;
+				lastBuildTime = Util.getNowDateStr();
+
+				if (pendingSince != 0) {
+					lastLatencyMillis = (System.nanoTime() - pendingSince) / 1_000_000;
+					pendingSince = 0;
+				}
+			} else {
+				skippedBuildCount++;
+			}
+		} catch (Exception e) {
+			// 예외가 나가면 스케줄이 멈추므로 여기서 처리한다.
+			e.printStackTrace();
+		}
+	}
+
+	// 실행 여부/파일 감시는 이 객체의 잠금으로, 빌드 결과는 volatile 로 읽는다.
+	public synchronized String getStatus() {
+		return String.format("AutoSite : %s%s | 빌드 %d회 | 건너뜀 %d회 | 마지막 빌드 %s | 반영 대기 %s | 파일 변경 반영 지연 %s",
+				isRunning() ? "실행 중" : "멈춤", siteWatcher != null ? "(파일 감시)" : "", buildCount,
+				skippedBuildCount, lastBuildTime, db.getVersion() != builtVersion ? "있음" : "없음",
+				lastLatencyMillis < 0 ? "-" : lastLatencyMillis + " ms");
+	}
+}
+
+// SiteWatcher
+// db/<table> 과 site_template/ 의 파일 변경 알림을 받아서
+// db/<table>/<id>.json 이면 그 행을 다시 읽고, 템플릿이면 템플릿 변경으로 알린다.
+// (로그 저장 엔진의 세그먼트 파일은 행 단위로 알 수 없으므로 무시한다)
+class SiteWatcher {
+	private static final Pattern ROW_FILE_PATTERN = Pattern.compile("(\\d+)\\.json");
+
+	private DB db;
+	private AutoSiteScheduler scheduler;
+	private WatchService watchService;
+	// 감시 중인 디렉토리 -> 테이블 이름(템플릿 디렉토리는 null)
+	private Map<WatchKey, String> tableNamesByKey;
+	private Thread thread;
+
+	SiteWatcher(DB db, AutoSiteScheduler scheduler) throws IOException {
+		this.db = db;
+		this.scheduler = scheduler;
+		this.watchService = FileSystems.getDefault().newWatchService();
+		this.tableNamesByKey = new HashMap<>();
+
+		for (String tableName : db.getTableNames()) {
+			register(Paths.get(db.getDirPath(), tableName), tableName);
+		}
+
+		try (DirectoryStream<Path> templateDirs = Files.newDirectoryStream(Paths.get("site_template"),
+				Files::isDirectory)) {
+			register(Paths.get("site_template"), null);
+
+			for (Path templateDir : templateDirs) {
+				register(templateDir, null);
+			}
 		}
 	}
 
-	private void actionCreatLogin() {
-		buildService.creatLogin();
+	private void register(Path dir, String tableName) throws IOException {
+		WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+		tableNamesByKey.put(key, tableName);
+	}
+
+	public void start() {
+		thread = new Thread(this::run, "site-watcher");
+		thread.setDaemon(true);
+		thread.start();
 	}
 
-	private void actionCreatMain() {
-		buildService.creatMain();
+	public void close() {
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 
-	private void actionSite(Request reqeust) {
-		buildService.buildSite();
+	private void run() {
+		while (true) {
+			WatchKey key;
+
+			try {
+				key = watchService.take();
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				return;
+			}
+
+			String tableName = tableNamesByKey.get(key);
+			boolean changed = false;
+			boolean templateChanged = false;
+
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					changed = true;
+					continue;
+				}
+
+				String fileName = event.context().toString();
+
+				if (tableName == null) {
+					templateChanged = true;
+					continue;
+				}
+
+				Matcher matcher = ROW_FILE_PATTERN.matcher(fileName);
+
+				if (matcher.matches() && db.refreshRow(tableName, Integer.parseInt(matcher.group(1)))) {
+					changed = true;
+				}
+			}
+
+			key.reset();
+
+			if (changed || templateChanged) {
+				scheduler.onFileChanged(templateChanged);
+			}
+		}
 	}
 }
 
@@ -592,7 +1294,8 @@ class MemberController extends Controller {
 		if (loginedMember == null) {
 			System.out.println("현재 로그인한 대상이 없습니다.");
 		} else {
-			System.out.println(loginedMember.getName());
+			System.out.println(loginedMember.getName() + " (작성한 게시물 "
+					+ memberService.getArticleCount(loginedMember.getId()) + "개)");
 		}
 
 	}
@@ -633,641 +1336,5386 @@ class MemberController extends Controller {
 	}
 }
 
-// Service
-class BuildService {
-	ArticleService articleService;
-	MemberService memberService;
+// 시스템 관련 컨트롤러(캐시 현황 등)
+class SystemController extends Controller {
 
-	BuildService() {
-		articleService = Factory.getArticleService();
-		memberService = Factory.getMemberService();
+	@Override
+	void doAction(Request reqeust) {
+		if (reqeust.getActionName().equals("cache")) {
+			actionCache(reqeust);
+		} else if (reqeust.getActionName().equals("backup")) {
+			actionBackup(reqeust);
+		} else if (reqeust.getActionName().equals("restore")) {
+			actionRestore(reqeust);
+		} else if (reqeust.getActionName().equals("verify")) {
+			actionVerify(reqeust);
+		} else if (reqeust.getActionName().equals("stats")) {
+			actionStats(reqeust);
+		}
 	}
 
-	public void CreatStatistics() {
-		
-		int noticeCount = 0;
-		int freeCount = 0;
-
+	// 명령어/테이블/빌드 지표 출력
+	private void actionStats(Request reqeust) {
+		System.out.println("이름 | 값");
+		for (String line : Metrics.getStatLines()) {
+			System.out.println(line);
+		}
+	}
+
+	// 통계 카운터를 전체 조회 결과와 맞춰본다.(다르면 바로잡는다)
+	private void actionVerify(Request reqeust) {
+		long startTime = System.nanoTime();
+		List<String> differences = Factory.getDB().verifyStatistics();
+
+		if (differences.isEmpty()) {
+			System.out.printf("통계가 전체 조회 결과와 같습니다. (%d ms)\n", (System.nanoTime() - startTime) / 1_000_000);
+			return;
+		}
+
+		System.out.println("항목 | 카운터 | 전체 조회");
+		for (String difference : differences) {
+			System.out.println(difference);
+		}
+
+		System.out.printf("다른 항목 %d개를 바로잡았습니다. (%d ms)\n", differences.size(),
+				(System.nanoTime() - startTime) / 1_000_000);
+	}
+
+	// system backup : 바뀐 행만(처음이면 전체), system backup full : 전체
+	private void actionBackup(Request reqeust) {
+		long startTime = System.nanoTime();
+
+		for (String result : Factory.getDB().backup("full".equals(reqeust.getArg1()))) {
+			System.out.println(result);
+		}
+
+		System.out.printf("백업이 완료되었습니다. (%d ms)\n", (System.nanoTime() - startTime) / 1_000_000);
+	}
+
+	// system restore : 마지막 백업으로, system restore 번호 : 그 번호의 백업 시점으로
+	private void actionRestore(Request reqeust) {
+		int backupNo = 0;
+
+		if (reqeust.getArg1() != null) {
+			try {
+				backupNo = Integer.parseInt(reqeust.getArg1());
+			} catch (NumberFormatException e) {
+				System.out.println("백업 번호를 숫자로 입력해주세요.");
+				return;
+			}
+		}
+
+		for (String result : Factory.getDB().restore(backupNo)) {
+			System.out.println(result);
+		}
+
+		System.out.println("복원이 완료되었습니다.");
+	}
+
+	// 테이블 캐시 적중/미스 현황 출력
+	private void actionCache(Request reqeust) {
+		System.out.println("테이블 | 적중 | 미스 | 캐시된 행");
+		for (String stat : Factory.getDB().getCacheStats()) {
+			System.out.println(stat);
+		}
+	}
+}
+
+// Service
+class BuildService {
+	// 빌드하는 동안 읽는 DB 스냅샷(빌드 시작에 열고 끝에 닫는다)
+	private DBSnapshot snapshot;
+	// 페이지 별 입력 서명, 입력이 바뀐 페이지만 다시 만든다.
+	private BuildManifest manifest;
+	private int builtPageCount;
+	private int skippedPageCount;
+	// 이번 빌드에서 쓰지 못한 페이지 수, 있으면 매니페스트를 저장하지 않는다.
+	private int failedPageCount;
+	// 렌더링 병렬도(-Dssg.build.parallelism, 기본값 : CPU 코어 수)
+	private int parallelism;
+	// 게시판 리스트 한 페이지의 게시물 수(-Dssg.build.pageSize)
+	private int listPageSize;
+	private ForkJoinPool renderPool;
+	// 이번 빌드에서 파일로 쓴 바이트 수
+	private AtomicLong writtenBytes = new AtomicLong();
+	// 수동 빌드와 AutoSite 빌드가 겹치지 않게 한다.
+	private ReentrantLock buildLock = new ReentrantLock();
+	// 정적 사이트 검색 색인 조각(단어와 가중치는 DB 의 SearchIndex 에서 가져온다)
+	private SiteSearchIndex siteSearchIndex;
+	private static final Pattern SITE_PAGE_PATTERN = Pattern.compile("\\d+\\.html|.+-list-\\d+\\.html");
+
+	BuildService() {
+		parallelism = Integer.getInteger("ssg.build.parallelism", Runtime.getRuntime().availableProcessors());
+		listPageSize = Integer.getInteger("ssg.build.pageSize", 20);
+	}
+
+	private SiteSearchIndex getSiteSearchIndex() {
+		if (siteSearchIndex == null) {
+			siteSearchIndex = new SiteSearchIndex(Factory.getDB().getSearchIndex());
+		}
+
+		return siteSearchIndex;
+	}
+
+	private BuildManifest getManifest() {
+		if (manifest == null) {
+			manifest = BuildManifest.load("site/.build-manifest");
+		}
+
+		return manifest;
+	}
+
+	// 서명이 그대로면 건너뛰고, 바뀌었으면 다시 만들어야 한다.
+	private boolean needsBuild(String fileName, long signature) {
+		if (getManifest().isChanged(fileName, signature)) {
+			builtPageCount++;
+			return true;
+		}
+
+		skippedPageCount++;
+		return false;
+	}
+
+	private String getWriterName(Article article) {
+		Member member = snapshot.getMember(article.getMemberId());
+
+		if (member == null) {
+			return "";
+		}
+
+		return member.getName();
+	}
+
+	// 템플릿이 바뀌면 소스가 바뀌므로 그 템플릿을 쓰는 페이지의 서명도 바뀌어 다시 만들어진다.
+	private Template getTemplate(String templatePath) {
+		return Factory.getTemplateRepository().get(templatePath);
+	}
+
+	// head + 페이지 템플릿 + foot 을 페이지 문자열을 만들지 않고 바로 파일로 흘려 쓴다.
+	// 쓰지 못하면 false, 그 페이지의 서명은 매니페스트에 넣지 않아야 다음 빌드에서 다시 만든다.
+	private boolean writePage(String fileName, Template head, Template template, TemplateModel model,
+			Template foot) {
+		try (HtmlFileWriter out = new HtmlFileWriter("site/article/" + fileName, writtenBytes)) {
+			head.render(out, model);
+			template.render(out, model);
+			foot.render(out, model);
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	// 쓰지 못한 페이지가 있으면 저장하지 않는다.(메모리의 매니페스트에는 쓴 페이지의 서명만 들어 있다)
+	private void saveManifest() {
+		if (failedPageCount == 0) {
+			getManifest().save();
+		}
+	}
+
+	private void printFailedPages() {
+		if (failedPageCount > 0) {
+			System.out.printf("페이지 %d개를 쓰지 못했습니다. 매니페스트를 저장하지 않았고 다음 빌드에서 다시 만듭니다.\n",
+					failedPageCount);
+		}
+	}
+
+	// 스냅샷 시점의 통계 카운터를 읽기만 하므로 게시물 수와 상관없이 게시판 수 만큼만 일한다.(다른 페이지와 같은 시점)
+	public void CreatStatistics() {
 		Util.makeDir("site");
 		Util.makeDir("site/article");
-		String head = Util.getFileContents("site_template/part/head.html");
-		String foot = Util.getFileContents("site_template/part/foot.html");
+		Template head = getTemplate("part/head.html");
+		Template foot = getTemplate("part/foot.html");
 
 		String fileName = "Statistics.html";
 
-		String html = "";
+		Template template = getTemplate("article/Statistics.html");
 
-		String template = Util.getFileContents("site_template/article/Statistics.html");
-		
-		List<Article> articles = articleService.getArticles();
-		
-		for (Article article : articles) {
-			if ( article.getBoardId() == 1 ) {
-				noticeCount += 1;
-			} else if ( article.getBoardId() == 2 ) {
-				freeCount += 1;
-			}
+		SiteStatistics statistics = snapshot.getStatistics();
+		long signature = BuildManifest.signature(head.getSource(), foot.getSource(), template.getSource(),
+				statistics.getMemberCount(), statistics.getArticleCount());
+
+		List<TemplateModel> boardModels = new ArrayList<>();
+
+		for (Board board : snapshot.getBoards()) {
+			Map<String, Object> boardModel = new HashMap<>();
+			boardModel.put("boardTitle", getBoardTitle(board));
+			boardModel.put("boardArticleCount", statistics.getArticleCountByBoardId(board.getId()));
+			boardModels.add(boardModel::get);
+			signature = BuildManifest.signature(signature, boardModel.get("boardTitle"),
+					boardModel.get("boardArticleCount"));
+		}
+
+		List<TemplateModel> dayModels = new ArrayList<>();
+
+		for (Map.Entry<String, Integer> entry : statistics.getRecentDailyCounts(7).entrySet()) {
+			Map<String, Object> dayModel = new HashMap<>();
+			dayModel.put("date", entry.getKey());
+			dayModel.put("dayArticleCount", entry.getValue());
+			dayModels.add(dayModel::get);
+			signature = BuildManifest.signature(signature, entry.getKey(), entry.getValue());
 		}
 
-		html += "<h2 class=\"t1-h\">사이트 통계</h2>";
-		html += "<table border=1>";
-		html += "<thead>";
-		html += "<tr>";
-		html += "<td class=\"td1\">회원 수</td>";
-		html += "<td colspan=3>" + memberService.getLastMemberId() + "</td>";
-		html += "</tr>";
-		html += "<tr>";
-		html += "<td class=\"td1\">전체 게시물 수</td>";
-		html += "<td colspan=3>" + articleService.getLastArticleId() + "</td>";
-		html += "</tr>";
-		html += "<tr>";
-		html += "<td class=\"td1\">공지사항 게시물 수</td>";
-		html += "<td colspan=3>" + noticeCount + "</td>";
-		html += "</tr>";
-		html += "<tr>";
-		html += "<td class=\"td1\">자유게시판 게시물 수</td>";
-		html += "<td colspan=3>" + freeCount  + "</td>";
-		html += "</tr>";
+		Map<String, Object> model = new HashMap<>();
+		model.put("memberCount", statistics.getMemberCount());
+		model.put("articleCount", statistics.getArticleCount());
+		model.put("boards", boardModels);
+		model.put("days", dayModels);
 
-		html = template.replace("${TR}", html);
+		if (needsBuild(fileName, signature) == false) {
+			return;
+		}
 
-		html = head + html + foot;
+		if (writePage(fileName, head, template, model::get, foot) == false) {
+			failedPageCount++;
+			return;
+		}
 
-		Util.writeFileContents("site/article/" + fileName, html);
+		getManifest().put(fileName, signature);
+		saveManifest();
 	}
 
 	public void creatLogin() {
 		Util.makeDir("site");
 		Util.makeDir("site/article");
-		String head = Util.getFileContents("site_template/part/head.html");
-		String foot = Util.getFileContents("site_template/part/foot.html");
+		Template head = getTemplate("part/head.html");
+		Template foot = getTemplate("part/foot.html");
 
 		String fileName = "login.html";
 
-		String html = "";
+		Template template = getTemplate("article/login.html");
 
-		String template = Util.getFileContents("site_template/article/login.html");
+		long signature = BuildManifest.signature(head.getSource(), foot.getSource(), template.getSource());
 
-		html = template.replace("${TR}", html);
+		if (needsBuild(fileName, signature) == false) {
+			return;
+		}
 
-		html = head + html + foot;
+		if (writePage(fileName, head, template, name -> null, foot) == false) {
+			failedPageCount++;
+			return;
+		}
 
-		Util.writeFileContents("site/article/" + fileName, html);
+		getManifest().put(fileName, signature);
+		saveManifest();
 	}
 
 	public void creatMain() {
 		Util.makeDir("site");
 		Util.makeDir("site/article");
-		String head = Util.getFileContents("site_template/part/head.html");
-		String foot = Util.getFileContents("site_template/part/foot.html");
+		Template head = getTemplate("part/head.html");
+		Template foot = getTemplate("part/foot.html");
 
 		String fileName = "main.html";
 
-		String html = "";
+		Template template = getTemplate("article/main.html");
+
+		long signature = BuildManifest.signature(head.getSource(), foot.getSource(), template.getSource());
 
-		String template = Util.getFileContents("site_template/article/main.html");
+		if (needsBuild(fileName, signature) == false) {
+			return;
+		}
 
-		html += "<style> .main-box {text-align: center; padding: 100px;}";
-		html += ".main-box > img{width: 800px; border-radius: 50px;}</style>";
+		if (writePage(fileName, head, template, name -> null, foot) == false) {
+			failedPageCount++;
+			return;
+		}
 
-		html += "<nav class=\"main-box\">";
-		html += "<img src=\"main\\images\\main1.jpg\" alt=\"\"></nav>";
+		getManifest().put(fileName, signature);
+		saveManifest();
+	}
 
-		html = head + html + foot;
+	public void buildSite() {
+		buildSite(false);
+	}
 
-		Util.writeFileContents("site/article/" + fileName, html);
+	// build site 명령 : 게시판/게시물 페이지와 메인, 로그인, 통계 페이지를 만들고 요약을 출력한다.
+	public void buildAll(boolean fullBuild) {
+		buildLock.lock();
 
+		try {
+			buildAllPages(fullBuild);
+		} finally {
+			buildLock.unlock();
+		}
 	}
 
-	// bulid site 명령어를 통해 html 생성.d
-	public void buildSite() {
+	// 다른 빌드가 진행 중이면 기다리지 않고 false
+	public boolean buildAllIfIdle(boolean fullBuild) {
+		if (buildLock.tryLock() == false) {
+			return false;
+		}
+
+		try {
+			buildAllPages(fullBuild);
+			return true;
+		} finally {
+			buildLock.unlock();
+		}
+	}
+
+	private void buildAllPages(boolean fullBuild) {
+		BuildSummary summary = new BuildSummary(parallelism);
+		writtenBytes.set(0);
+		getSiteSearchIndex().beginBuild();
+		snapshot = Factory.getDB().openSnapshot(getSiteSearchIndex()::takeChanges);
+
+		try {
+			buildSite(fullBuild, summary);
+
+			long startTime = System.nanoTime();
+			int startBuiltPageCount = builtPageCount;
+			creatMain();
+			creatLogin();
+			CreatStatistics();
+			summary.addPhase("메인/로그인/통계", startTime, builtPageCount - startBuiltPageCount);
+		} finally {
+			snapshot.close();
+			snapshot = null;
+		}
+
+		summary.print(writtenBytes.get());
+		printFailedPages();
+	}
+
+	public void buildSite(boolean fullBuild) {
+		buildLock.lock();
+
+		try {
+			BuildSummary summary = new BuildSummary(parallelism);
+			writtenBytes.set(0);
+			getSiteSearchIndex().beginBuild();
+			snapshot = Factory.getDB().openSnapshot(getSiteSearchIndex()::takeChanges);
+
+			try {
+				buildSite(fullBuild, summary);
+			} finally {
+				snapshot.close();
+				snapshot = null;
+			}
+
+			summary.print(writtenBytes.get());
+			printFailedPages();
+		} finally {
+			buildLock.unlock();
+		}
+	}
+
+	// bulid site 명령어를 통해 html 생성.
+	// fullBuild 가 false 이면 입력(게시물, 이웃 게시물, 템플릿)이 바뀐 페이지만 다시 만든다.
+	// 바뀐 페이지를 고르는 것은 순서대로 하고, 고른 페이지의 렌더링만 병렬로 한다.
+	// 모든 읽기는 빌드 시작 시점의 스냅샷에서 하므로 빌드 중의 글쓰기는 다음 빌드에 반영된다.
+	private void buildSite(boolean fullBuild, BuildSummary summary) {
 
 		Util.makeDir("site");
 		Util.makeDir("site/article");
 
-		String head = Util.getFileContents("site_template/part/head.html");
-		String foot = Util.getFileContents("site_template/part/foot.html");
+		if (fullBuild) {
+			getManifest().clear();
+		}
 
-		// 전체 게시판 가져오기.
-		List<Board> boards = articleService.getBoards();
+		builtPageCount = 0;
+		skippedPageCount = 0;
+		failedPageCount = 0;
+
+		Template head = getTemplate("part/head.html");
+		Template foot = getTemplate("part/foot.html");
+		Template listTemplate = getTemplate("article/list.html");
+		Template detailTemplate = getTemplate("article/detail.html");
+
+		// 이번 빌드에서 만들어져야 하는 게시판/게시물 페이지
+		Set<String> livePages = new HashSet<>();
+
+		// 각 게시판 별 게시물 리스트 페이지 생성(<code>-list-1.html ~ <code>-list-N.html)
+		// 페이지마다 그 페이지에 들어갈 게시물만 읽어서 서명을 만들고, 렌더링할 때 다시 읽는다.
+		long startTime = System.nanoTime();
+		List<Board> boards = snapshot.getBoards();
+		List<ListPage> dirtyListPages = new ArrayList<>();
+		Set<String> dirtyBoardCodes = new LinkedHashSet<>();
+		// 템플릿은 페이지마다 같으므로 한번만 해시한다.
+		long listTemplateSignature = BuildManifest.signature(head.getSource(), foot.getSource(),
+				listTemplate.getSource());
 
-		// 각 게시판 별 게시물 리스트 페이지 생성
 		for (Board board : boards) {
-			String fileName = board.getCode() + "-list-1.html";
+			List<Integer> articleIds = snapshot.getArticleIdsByBoardCode(board.getCode());
+			int pageCount = Math.max(1, (articleIds.size() + listPageSize - 1) / listPageSize);
 
-			String html = "";
+			for (int page = 1; page <= pageCount; page++) {
+				String fileName = getListPageFileName(board, page);
+				livePages.add(fileName);
 
-			List<Article> articles = articleService.getArticlesByBoardCode(board.getCode());
+				List<Integer> pageArticleIds = articleIds.subList((page - 1) * listPageSize,
+						Math.min(page * listPageSize, articleIds.size()));
 
-			String template = Util.getFileContents("site_template/article/list.html");
+				// 다음 페이지가 있는지만 서명에 넣는다.(새 페이지가 생겨도 마지막 페이지만 바뀐다)
+				long signature = BuildManifest.signature(listTemplateSignature, board.getCode(), page,
+						page < pageCount);
 
-			System.out.println("boardCode : " + board.getCode() + "생성 완료");
+				for (int articleId : pageArticleIds) {
+					Article article = snapshot.getArticle(articleId);
+					signature = BuildManifest.signature(signature, article.getId(), article.getTitle(),
+							article.getRegDate(), getWriterName(article));
+				}
 
-			if (board.getCode().equals("notice")) {
-				html += "<h2>공지사항</h2>";
-			} else if (board.getCode().equals("free")) {
-				html += "<h2>자유 게시판</h2>";
+				if (needsBuild(fileName, signature)) {
+					dirtyListPages.add(new ListPage(board, page, pageCount, pageArticleIds, signature));
+					dirtyBoardCodes.add(board.getCode());
+				}
 			}
-			for (Article article : articles) {
+		}
 
-				html += "<tr>";
-				html += "<td>" + article.getId() + "</td>";
-				html += "<td><a href=\"" + article.getId() + ".html\">" + article.getTitle() + "</a></td>";
-				html += "<td>" + Factory.getSession().getLoginedMember().getName() + "</td>";
-				html += "<td>" + article.getRegDate() + "</td>";
-				html += "</tr>";
-			}
+		for (ListPage page : renderPages(dirtyListPages, page -> writeListPage(page, head, foot, listTemplate))) {
+			getManifest().put(getListPageFileName(page.board, page.page), page.signature);
+		}
+
+		for (String boardCode : dirtyBoardCodes) {
+			System.out.println("boardCode : " + boardCode + "생성 완료");
+		}
 
-			html = template.replace("${TR}", html);
+		summary.addPhase("게시판 리스트", startTime, dirtyListPages.size());
 
-			html = head + html + foot;
+		// 게시물 별 파일 생성
+		startTime = System.nanoTime();
+		List<Article> articles = snapshot.getArticles();
+		List<DetailPage> dirtyPages = new ArrayList<>();
+		long detailTemplateSignature = BuildManifest.signature(head.getSource(), foot.getSource(),
+				detailTemplate.getSource());
+
+		for (int i = 0; i < articles.size(); i++) {
+			Article article = articles.get(i);
+			String fileName = article.getId() + ".html";
+			livePages.add(fileName);
+
+			// 이전글/다음글은 실제로 존재하는 이웃 게시물
+			int prevId = i > 0 ? articles.get(i - 1).getId() : 0;
+			int nextId = i + 1 < articles.size() ? articles.get(i + 1).getId() : 0;
+
+			long signature = BuildManifest.signature(detailTemplateSignature, article.getId(), article.getTitle(),
+					article.getBody(), article.getRegDate(), prevId, nextId);
+
+			if (needsBuild(fileName, signature)) {
+				dirtyPages.add(new DetailPage(article, prevId, nextId, signature));
+			}
+		}
 
-			Util.writeFileContents("site/article/" + fileName, html);
+		for (DetailPage page : renderPages(dirtyPages, page -> writeDetailPage(page, head, foot, detailTemplate))) {
+			getManifest().put(page.article.getId() + ".html", page.signature);
 		}
 
-		// 게시물 별 파일 생성
-		List<Article> articles = articleService.getArticles();
+		summary.addPhase("게시물 상세", startTime, dirtyPages.size());
+
+		// 검색 색인 조각과 검색 페이지
+		startTime = System.nanoTime();
+		int startBuiltPageCount = builtPageCount;
+		buildSearchIndex(articles, fullBuild, head, foot);
+		livePages.addAll(getSiteSearchIndex().getLiveFileNames());
+		summary.addPhase("검색 색인", startTime, builtPageCount - startBuiltPageCount);
+
+		// 지워진 게시물/게시판의 페이지와 비게 된 검색 색인 조각 삭제
+		startTime = System.nanoTime();
+		int deletedPageCount = 0;
+
+		for (String fileName : getManifest().getFileNames()) {
+			if ((isSitePage(fileName) || fileName.startsWith(SiteSearchIndex.DIR_NAME + "/"))
+					&& livePages.contains(fileName) == false) {
+				new File("site/article/" + fileName).delete();
+				getManifest().remove(fileName);
+				deletedPageCount++;
+			}
+		}
 
-		for (Article article : articles) {
+		saveManifest();
 
-			String template = Util.getFileContents("site_template/article/detail.html");
+		summary.addPhase("지워진 페이지 정리", startTime, deletedPageCount);
 
-			String html = "";
+		System.out.printf("파일 생성이 완료되었습니다. (생성 %d, 변경 없음 %d, 삭제 %d)\n", builtPageCount, skippedPageCount,
+				deletedPageCount);
 
-			html += "<h2 class=\"t1-h\">상세보기</h2>";
-			html += "<table border=1>";
-			html += "<thead>";
-			html += "<tr>";
-			html += "<td class=\"td1\" colspan=4>게시물 상세보기</td>";
-			html += "</tr>";
-			html += "<tr>";
-			html += "<td class=\"td1\">게시물 번호</td>";
-			html += "<td colspan=3>" + article.getId() + "</td>";
-			html += "</tr>";
-			html += "<tr>";
-			html += "<td class=\"td1\">제목</td>";
-			html += "<td colspan=3>" + article.getTitle() + "</td>";
-			html += "</tr>";
-			html += "</tr>";
-			html += "<td class=\"td1\">내용</td>";
-			html += "<td colspan=3>" + article.getBody() + "</td>";
-			html += "</tr>";
-			html += "<tr>";
-			html += "<td class=\"td1\">작성일자</td>";
-			html += "<td colspan=3>" + article.getRegDate() + "</td>";
-			html += "</tr>";
-			html += "<tr>";
-			html += "<td class=\"td1\"><a href=\"" + (article.getId() - 1) + ".html\">이전글</a></td>";
-			html += "<td class=\"td1\"><a href=\"" + (article.getId() + 1) + ".html\">다음글</a></td>";
-			html += "</tr>";
+	}
+
+	// 바뀐 단어/게시물이 속한 색인 조각만 다시 쓴다.(내용이 같으면 매니페스트에서 걸러진다)
+	// 이미 있는 파일은 먼저 해시만 해서 바뀌었을 때만 쓰고, 새 파일은 쓰면서 해시한다.
+	private void buildSearchIndex(List<Article> articles, boolean fullBuild, Template head, Template foot) {
+		Util.makeDir("site/article/" + SiteSearchIndex.DIR_NAME);
+		SiteSearchIndex siteSearchIndex = getSiteSearchIndex();
+
+		for (String fileName : siteSearchIndex.update(snapshot, articles, fullBuild)) {
+			try {
+				if (getManifest().contains(fileName)) {
+					ContentHash hash = new ContentHash();
+					siteSearchIndex.render(fileName, snapshot, hash);
+
+					if (needsBuild(fileName, hash.getValue()) == false) {
+						continue;
+					}
+				} else {
+					builtPageCount++;
+				}
 
-			html = template.replace("${TR}", html);
+				long signature;
 
-			html = head + html + foot;
+				try (HtmlFileWriter out = new HtmlFileWriter("site/article/" + fileName, writtenBytes)) {
+					ContentHash hash = new ContentHash(out);
+					siteSearchIndex.render(fileName, snapshot, hash);
+					signature = hash.getValue();
+				}
 
-			Util.writeFileContents("site/article/" + article.getId() + ".html", html);
+				getManifest().put(fileName, signature);
+			} catch (IOException e) {
+				e.printStackTrace();
+				failedPageCount++;
+			}
+		}
 
+		// 쓰지 못한 조각이 있으면 바뀐 단어/게시물을 다음 빌드로 넘겨서 다시 만든다.
+		if (failedPageCount == 0) {
+			siteSearchIndex.finishBuild();
 		}
 
-		System.out.println("파일 생성이 완료되었습니다.");
+		String fileName = "search.html";
+		Template template = getTemplate("article/search.html");
+		long signature = BuildManifest.signature(head.getSource(), foot.getSource(), template.getSource());
 
+		if (needsBuild(fileName, signature)) {
+			if (writePage(fileName, head, template, name -> null, foot)) {
+				getManifest().put(fileName, signature);
+			} else {
+				failedPageCount++;
+			}
+		}
 	}
 
-}
-
-class ArticleService {
-	private ArticleDao articleDao;
+	// 다시 만들 게시판 리스트 페이지
+	static class ListPage {
+		Board board;
+		int page;
+		int pageCount;
+		List<Integer> articleIds;
+		long signature;
+
+		ListPage(Board board, int page, int pageCount, List<Integer> articleIds, long signature) {
+			this.board = board;
+			this.page = page;
+			this.pageCount = pageCount;
+			this.articleIds = articleIds;
+			this.signature = signature;
+		}
+	}
 
-	ArticleService() {
-		articleDao = Factory.getArticleDao();
+	private String getListPageFileName(Board board, int page) {
+		return board.getCode() + "-list-" + page + ".html";
 	}
 
-	public String getLastArticleId() {
-		return articleDao.getLastArticleId();
+	// 다시 만들 게시물 상세 페이지
+	static class DetailPage {
+		Article article;
+		int prevId;
+		int nextId;
+		long signature;
+
+		DetailPage(Article article, int prevId, int nextId, long signature) {
+			this.article = article;
+			this.prevId = prevId;
+			this.nextId = nextId;
+			this.signature = signature;
+		}
 	}
 
-	public List<Article> getArticlesByBoardCode(String code) {
-		return articleDao.getArticlesByBoardCode(code);
+	// 렌더링 병렬도, 1 이면 순서대로 만든다.
+	public void setParallelism(int parallelism) {
+		if (renderPool != null) {
+			renderPool.shutdown();
+			renderPool = null;
+		}
 
+		this.parallelism = Math.max(1, parallelism);
 	}
 
-	public List<Board> getBoards() {
-		return articleDao.getBoards();
+	public int getParallelism() {
+		return parallelism;
 	}
 
-	public void articleDelete(String filePath) {
-		articleDao.articleDelete(filePath);
+	public void setListPageSize(int listPageSize) {
+		this.listPageSize = Math.max(1, listPageSize);
 	}
 
-	public void modify(String title, String body, int id) {
-		articleDao.modify(title, body, id);
+	public int getListPageSize() {
+		return listPageSize;
 	}
 
-	public Article getArticlebyId(int id) {
-		return articleDao.getArticlebyId(id);
+	// 각 페이지는 서로 다른 파일에만 쓰므로 순서와 상관없이 결과가 같다.
+	// 실제로 쓴 페이지만 돌려주고, 나머지(쓰기 실패, 렌더링 예외)는 쓰지 못한 페이지로 센다.
+	private <P> List<P> renderPages(List<P> pages, Predicate<P> renderer) {
+		boolean[] written = new boolean[pages.size()];
+
+		if (parallelism <= 1 || pages.size() <= 1) {
+			try {
+				for (int i = 0; i < pages.size(); i++) {
+					written[i] = renderer.test(pages.get(i));
+				}
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		} else {
+			if (renderPool == null) {
+				renderPool = new ForkJoinPool(parallelism);
+			}
+
+			try {
+				renderPool.submit(() -> IntStream.range(0, pages.size()).parallel()
+						.forEach(i -> written[i] = renderer.test(pages.get(i)))).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				e.getCause().printStackTrace();
+			}
+		}
+
+		List<P> writtenPages = new ArrayList<>(pages.size());
+
+		for (int i = 0; i < pages.size(); i++) {
+			if (written[i]) {
+				writtenPages.add(pages.get(i));
+			}
+		}
+
+		failedPageCount += pages.size() - writtenPages.size();
+
+		return writtenPages;
 	}
 
-	public int makeBoard(String name, String code) {
-		Board oldBoard = articleDao.getBoardByCode(code);
+	private boolean writeListPage(ListPage page, Template head, Template foot, Template listTemplate) {
+		List<TemplateModel> rows = new ArrayList<>(page.articleIds.size());
 
-		if (oldBoard != null) {
-			return -1;
+		for (int articleId : page.articleIds) {
+			rows.add(getArticleModel(snapshot.getArticle(articleId)));
 		}
 
-		Board board = new Board(name, code);
-		return articleDao.saveBoard(board);
+		TemplateModel model = name -> {
+			switch (name) {
+			case "boardTitle":
+				return getBoardTitle(page.board);
+			case "articles":
+				return rows;
+			case "page":
+				return page.page;
+			case "firstPageLink":
+				return getPageLink(page.board, page.page > 1 ? 1 : 0, "처음");
+			case "prevPageLink":
+				return getPageLink(page.board, page.page - 1, "이전");
+			case "nextPageLink":
+				return getPageLink(page.board, page.page < page.pageCount ? page.page + 1 : 0, "다음");
+			default:
+				return null;
+			}
+		};
+
+		return writePage(getListPageFileName(page.board, page.page), head, listTemplate, model, foot);
 	}
 
-	public Board getBoard(int id) {
-		return articleDao.getBoard(id);
+	private String getPageLink(Board board, int page, String text) {
+		if (page <= 0) {
+			return text;
+		}
+
+		return "<a href=\"" + getListPageFileName(board, page) + "\">" + text + "</a>";
 	}
 
-	public int write(int boardId, int memberId, String title, String body) {
-		Article article = new Article(boardId, memberId, title, body);
-		return articleDao.save(article);
+	private boolean writeDetailPage(DetailPage page, Template head, Template foot, Template detailTemplate) {
+		TemplateModel articleModel = getArticleModel(page.article);
+
+		TemplateModel model = name -> {
+			if (name.equals("prevLink")) {
+				return getNeighborLink(page.prevId, "이전글");
+			} else if (name.equals("nextLink")) {
+				return getNeighborLink(page.nextId, "다음글");
+			}
+
+			return articleModel.get(name);
+		};
+
+		return writePage(page.article.getId() + ".html", head, detailTemplate, model, foot);
+	}
+
+	// 템플릿에서 쓰는 게시물 값
+	private TemplateModel getArticleModel(Article article) {
+		return name -> {
+			switch (name) {
+			case "id":
+				return article.getId();
+			case "title":
+				return article.getTitle();
+			case "body":
+				return article.getBody();
+			case "regDate":
+				return article.getRegDate();
+			case "writer":
+				return getWriterName(article);
+			default:
+				return null;
+			}
+		};
 	}
 
-	public List<Article> getArticles() {
-		return articleDao.getArticles();
+	private String getBoardTitle(Board board) {
+		if (board.getCode().equals("notice")) {
+			return "공지사항";
+		} else if (board.getCode().equals("free")) {
+			return "자유 게시판";
+		}
+
+		return board.getName();
+	}
+
+	private String getNeighborLink(int id, String text) {
+		if (id == 0) {
+			return text;
+		}
+
+		return "<a href=\"" + id + ".html\">" + text + "</a>";
+	}
+
+	// buildSite 가 관리하는 페이지(게시판 리스트, 게시물 상세)
+	private boolean isSitePage(String fileName) {
+		return SITE_PAGE_PATTERN.matcher(fileName).matches();
 	}
 
 }
 
-class MemberService {
-	private MemberDao memberDao;
+// SiteSearchIndex
+// 정적 사이트(site/article/search/)에서 쓰는 검색 색인. 서버 없이 브라우저 스크립트가 필요한 조각만 받아서 검색한다.
+// - t-<n>.json : 단어 조각, 단어의 hashCode 를 조각 수로 나눈 나머지로 나눈다. { "단어": [df, id, 가중치, id, 가중치, ...] }
+// - d-<n>.json : 게시물 조각, 번호를 블록 크기로 나눈 몫으로 나눈다. { "id": ["제목", "작성 날짜"] }
+// - meta.json : 게시물 수와 조각 설정
+// 단어 하나에 붙는 게시물은 가중치가 높은(같으면 최신) maxPostings 개까지만 쓰므로 흔한 단어가 있어도 조각 크기가 제한되고,
+// 검색어의 단어도 MAX_QUERY_TERMS 개까지만 쓰므로 한 번의 검색에서 받는 조각 수도 제한된다.
+// 단어와 가중치는 SearchIndex 의 색인을 그대로 쓰므로(단어 자르기/순위가 서버 검색과 같다) 따로 색인을 들고 있지 않고,
+// SearchIndex 가 모아 둔 바뀐 단어/게시물이 속한 조각만 다시 만든다.
+// 바뀐 것은 스냅샷을 여는 시점에 가져가고, 스냅샷 뒤에 바뀐 게시물은 스냅샷의 내용으로 가중치를 다시 세므로
+// 조각은 같은 빌드의 다른 페이지와 같은 시점의 내용이다.
+class SiteSearchIndex {
+	static final int MAX_QUERY_TERMS = 8;
+	static final String DIR_NAME = "search";
+
+	private SearchIndex searchIndex;
+	// 단어 조각 수(-Dssg.search.shards)
+	private int shardCount;
+	// 단어 하나에 쓰는 최대 게시물 수(-Dssg.search.maxPostings)
+	private int maxPostings;
+	// 게시물 조각 하나의 번호 범위(-Dssg.search.docBlockSize)
+	private int docBlockSize;
+
+	// 지난 빌드 이후 바뀐 단어/게시물, 빌드가 끝나면 비운다.(끝나지 못한 빌드의 것은 다음 빌드로 넘어간다)
+	private Set<String> changedTerms;
+	private Set<Integer> changedIds;
+	// 모든 조각을 한 번 만들었는지
+	private boolean built;
+	// 이번 빌드 : 스냅샷의 게시물 번호, 단어가 있는 조각, 다시 만들 조각의 단어
+	private BitSet liveIds;
+	private BitSet liveShards;
+	private Map<Integer, TreeSet<String>> shardTerms;
+	// 이번 빌드 : 스냅샷 뒤에 바뀐 게시물의 스냅샷 시점 단어와 가중치
+	private Map<Integer, Map<String, Integer>> snapshotWeights;
+
+	SiteSearchIndex(SearchIndex searchIndex) {
+		this.searchIndex = searchIndex;
+		shardCount = Integer.getInteger("ssg.search.shards", 256);
+		maxPostings = Integer.getInteger("ssg.search.maxPostings", 100);
+		docBlockSize = Integer.getInteger("ssg.search.docBlockSize", 1000);
+		changedTerms = new HashSet<>();
+		changedIds = new HashSet<>();
+		liveIds = new BitSet();
+		liveShards = new BitSet();
+		shardTerms = new HashMap<>();
+		snapshotWeights = new HashMap<>();
+	}
+
+	// 스냅샷을 열기 전에 부른다.(저장된 색인 읽기는 테이블을 잠그기 전에)
+	public void beginBuild() {
+		searchIndex.ensureLoaded();
+	}
+
+	// 스냅샷을 여는 동안(모든 테이블을 잠근 채로) 부른다. 스냅샷까지 바뀐 단어/게시물을 가져가고,
+	// 그 뒤에 바뀐 것은 SearchIndex 에 남아서 다음 빌드에서 다시 만든다.
+	public void takeChanges() {
+		searchIndex.takeChanges(changedTerms, changedIds);
+	}
+
+	// 스냅샷의 게시물과 바뀐 단어/게시물로 다시 만들어야 하는 파일 이름을 돌려준다.
+	// 처음이거나 fullBuild 이면 모든 파일이 대상이다.(내용이 같은 파일은 매니페스트에서 걸러진다)
+	public Set<String> update(DBSnapshot snapshot, List<Article> articles, boolean fullBuild) {
+		boolean allDirty = fullBuild || built == false;
+
+		liveIds = new BitSet();
 
-	MemberService() {
-		memberDao = Factory.getMemberDao();
+		for (Article article : articles) {
+			liveIds.set(article.getId());
+		}
+
+		Set<Integer> dirtyShards = new HashSet<>();
+
+		for (String term : changedTerms) {
+			dirtyShards.add(getShard(term));
+		}
+
+		liveShards = new BitSet(shardCount);
+		shardTerms = new HashMap<>();
+
+		snapshotWeights = new HashMap<>();
+		Consumer<String> addTerm = term -> {
+			int shard = getShard(term);
+			liveShards.set(shard);
+
+			if (allDirty || dirtyShards.contains(shard)) {
+				shardTerms.computeIfAbsent(shard, key -> new TreeSet<>()).add(term);
+			}
+		};
+
+		searchIndex.forEachTerm(addTerm);
+
+		// 스냅샷 뒤에 바뀐 게시물은 색인에서 빠진 단어가 스냅샷에는 있을 수 있다.
+		Set<Integer> laterChangedIds = new HashSet<>();
+		searchIndex.getChangedIds(laterChangedIds);
+
+		for (int id : laterChangedIds) {
+			getSnapshotWeights(id, snapshot).keySet().forEach(addTerm);
+		}
+
+		Set<String> fileNames = new LinkedHashSet<>();
+		fileNames.add(DIR_NAME + "/meta.json");
+
+		for (int shard : new TreeSet<>(shardTerms.keySet())) {
+			fileNames.add(getShardFileName(shard));
+		}
+
+		Set<Integer> liveBlocks = getLiveBlocks();
+
+		for (int block : allDirty ? liveBlocks : getBlocks(changedIds)) {
+			if (liveBlocks.contains(block)) {
+				fileNames.add(getBlockFileName(block));
+			}
+		}
+
+		return fileNames;
 	}
 
-	public String getLastMemberId() {
-		return memberDao.getLastMemberId();
+	// 이번 빌드의 파일을 모두 썼다.
+	public void finishBuild() {
+		built = true;
+		changedTerms.clear();
+		changedIds.clear();
+	}
+
+	// 지금 있어야 하는 모든 색인 파일
+	public Set<String> getLiveFileNames() {
+		Set<String> fileNames = new HashSet<>();
+		fileNames.add(DIR_NAME + "/meta.json");
+
+		for (int shard = liveShards.nextSetBit(0); shard >= 0; shard = liveShards.nextSetBit(shard + 1)) {
+			fileNames.add(getShardFileName(shard));
+		}
+
+		for (int block : getLiveBlocks()) {
+			fileNames.add(getBlockFileName(block));
+		}
+
+		return fileNames;
 	}
 
-	public Member getMemberByLoginIdAndLoginPw(String loginId, String loginPw) {
-		return memberDao.getMemberByLoginIdAndLoginPw(loginId, loginPw);
-	}
+	private Set<Integer> getLiveBlocks() {
+		Set<Integer> blocks = new TreeSet<>();
+
+		for (int id = liveIds.nextSetBit(0); id >= 0; id = liveIds.nextSetBit(id + 1)) {
+			blocks.add(id / docBlockSize);
+		}
+
+		return blocks;
+	}
+
+	private Set<Integer> getBlocks(Set<Integer> ids) {
+		Set<Integer> blocks = new TreeSet<>();
+
+		for (int id : ids) {
+			blocks.add(id / docBlockSize);
+		}
+
+		return blocks;
+	}
+
+	// update 가 돌려준 파일의 내용
+	public void render(String fileName, DBSnapshot snapshot, Appendable out) throws IOException {
+		String name = fileName.substring(DIR_NAME.length() + 1, fileName.length() - ".json".length());
+
+		if (name.equals("meta")) {
+			out.append("{\"docCount\":").append(String.valueOf(liveIds.cardinality()));
+			out.append(",\"shardCount\":").append(String.valueOf(shardCount));
+			out.append(",\"docBlockSize\":").append(String.valueOf(docBlockSize));
+			out.append(",\"maxQueryTerms\":").append(String.valueOf(MAX_QUERY_TERMS)).append("}");
+		} else if (name.startsWith("t-")) {
+			renderShard(Integer.parseInt(name.substring(2)), snapshot, out);
+		} else {
+			renderBlock(Integer.parseInt(name.substring(2)), snapshot, out);
+		}
+	}
+
+	// 단어마다 스냅샷에 있는 게시물만 가중치가 높은(같으면 최신) 순으로 쓴다.
+	// 가중치는 색인에서 가져오고, 스냅샷 뒤에 바뀐 게시물만 스냅샷의 제목/내용으로 다시 센다.(다른 페이지와 같은 시점)
+	private void renderShard(int shard, DBSnapshot snapshot, Appendable out) throws IOException {
+		TreeSet<String> terms = new TreeSet<>(shardTerms.getOrDefault(shard, new TreeSet<>()));
+		Map<String, int[]> termPostings = new HashMap<>();
+		Set<Integer> laterChangedIds = new HashSet<>();
+		searchIndex.getPostings(terms, termPostings, laterChangedIds);
+
+		for (int id : laterChangedIds) {
+			for (String term : getSnapshotWeights(id, snapshot).keySet()) {
+				if (getShard(term) == shard) {
+					terms.add(term);
+				}
+			}
+		}
+
+		out.append('{');
+		boolean first = true;
+
+		for (String term : terms) {
+			int[] postings = termPostings.getOrDefault(term, new int[0]);
+			// 가중치(위 32비트)와 번호(아래 32비트)를 합쳐서 정렬한다.
+			long[] entries = new long[postings.length / 2 + laterChangedIds.size()];
+			int count = 0;
+
+			for (int i = 0; i < postings.length; i += 2) {
+				if (liveIds.get(postings[i]) && laterChangedIds.contains(postings[i]) == false) {
+					entries[count++] = (long) postings[i + 1] << 32 | postings[i];
+				}
+			}
+
+			for (int id : laterChangedIds) {
+				Integer weight = getSnapshotWeights(id, snapshot).get(term);
+
+				if (weight != null) {
+					entries[count++] = (long) weight << 32 | id;
+				}
+			}
+
+			if (count == 0) {
+				continue;
+			}
+
+			Arrays.sort(entries, 0, count);
+
+			if (first == false) {
+				out.append(',');
+			}
+
+			first = false;
+			appendJsonString(out, term);
+			out.append(":[").append(String.valueOf(count));
+
+			for (int i = count - 1; i >= Math.max(0, count - maxPostings); i--) {
+				out.append(',').append(String.valueOf((int) entries[i])).append(',')
+						.append(String.valueOf((int) (entries[i] >>> 32)));
+			}
+
+			out.append(']');
+		}
+
+		out.append('}');
+	}
+
+	private void renderBlock(int block, DBSnapshot snapshot, Appendable out) throws IOException {
+		out.append('{');
+		boolean first = true;
+		int end = (block + 1) * docBlockSize;
+
+		for (int id = liveIds.nextSetBit(block * docBlockSize); id >= 0 && id < end; id = liveIds.nextSetBit(id + 1)) {
+			Article article = snapshot.getArticle(id);
+
+			if (first == false) {
+				out.append(',');
+			}
+
+			first = false;
+			out.append('"').append(String.valueOf(id)).append("\":[");
+			appendJsonString(out, article.getTitle());
+			out.append(',');
+			appendJsonString(out, article.getRegDate());
+			out.append(']');
+		}
+
+		out.append('}');
+	}
+
+	// 스냅샷에 없는 게시물이면 빈 맵
+	private Map<String, Integer> getSnapshotWeights(int id, DBSnapshot snapshot) {
+		return snapshotWeights.computeIfAbsent(id, key -> {
+			Article article = liveIds.get(id) ? snapshot.getArticle(id) : null;
+			return article == null ? Collections.emptyMap() : SearchIndex.getTermWeights(article);
+		});
+	}
+
+	// 브라우저 스크립트도 같은 계산(String.hashCode)으로 조각을 찾는다.
+	private int getShard(String term) {
+		return Math.floorMod(term.hashCode(), shardCount);
+	}
+
+	private String getShardFileName(int shard) {
+		return DIR_NAME + "/t-" + shard + ".json";
+	}
+
+	private String getBlockFileName(int block) {
+		return DIR_NAME + "/d-" + block + ".json";
+	}
+
+	private static void appendJsonString(Appendable out, String text) throws IOException {
+		out.append('"');
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+
+			if (c == '"' || c == '\\') {
+				out.append('\\').append(c);
+			} else if (c < 0x20) {
+				out.append(String.format("\\u%04x", (int) c));
+			} else {
+				out.append(c);
+			}
+		}
+
+		out.append('"');
+	}
+}
+
+// TemplateModel
+// 템플릿 자리표시자 이름 -> 값
+interface TemplateModel {
+	Object get(String name);
+}
+
+// Template
+// 템플릿 파일을 한번 해석해서 글자/자리표시자/반복 구간 목록으로 만들어 둔다.
+// ${이름} : 값 출력
+// ${#이름} ... ${/이름} : 값(목록)의 항목마다 반복, 항목에 없는 이름은 바깥 값에서 찾는다.
+class Template {
+	private static final int TEXT = 0;
+	private static final int VALUE = 1;
+	private static final int LOOP = 2;
+
+	private String source;
+	private List<Node> nodes;
+
+	static class Node {
+		int type;
+		String text;
+		List<Node> children;
+
+		Node(int type, String text) {
+			this.type = type;
+			this.text = text;
+		}
+	}
+
+	private Template(String source) {
+		this.source = source;
+	}
+
+	public static Template compile(String source) {
+		Template template = new Template(source);
+		Deque<Node> loops = new ArrayDeque<>();
+		List<Node> nodes = new ArrayList<>();
+		template.nodes = nodes;
+
+		int position = 0;
+
+		while (position < source.length()) {
+			int tagStart = source.indexOf("${", position);
+			int tagEnd = tagStart < 0 ? -1 : source.indexOf('}', tagStart);
+
+			if (tagStart < 0 || tagEnd < 0) {
+				nodes.add(new Node(TEXT, source.substring(position)));
+				break;
+			}
+
+			if (tagStart > position) {
+				nodes.add(new Node(TEXT, source.substring(position, tagStart)));
+			}
+
+			String tag = source.substring(tagStart + 2, tagEnd).trim();
+
+			if (tag.startsWith("#")) {
+				Node loop = new Node(LOOP, tag.substring(1));
+				loop.children = new ArrayList<>();
+				nodes.add(loop);
+				loops.push(loop);
+				nodes = loop.children;
+			} else if (tag.startsWith("/")) {
+				if (loops.isEmpty() || loops.peek().text.equals(tag.substring(1)) == false) {
+					throw new IllegalArgumentException("템플릿 반복 구간이 맞지 않습니다 : " + tag);
+				}
+
+				loops.pop();
+				nodes = loops.isEmpty() ? template.nodes : loops.peek().children;
+			} else {
+				nodes.add(new Node(VALUE, tag));
+			}
+
+			position = tagEnd + 1;
+		}
+
+		if (loops.isEmpty() == false) {
+			throw new IllegalArgumentException("템플릿 반복 구간이 닫히지 않았습니다 : " + loops.peek().text);
+		}
+
+		return template;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public void render(Appendable out, TemplateModel model) throws IOException {
+		renderNodes(nodes, out, model);
+	}
+
+	private static void renderNodes(List<Node> nodes, Appendable out, TemplateModel model) throws IOException {
+		for (Node node : nodes) {
+			if (node.type == TEXT) {
+				out.append(node.text);
+			} else if (node.type == VALUE) {
+				Object value = model.get(node.text);
+
+				if (value instanceof CharSequence) {
+					out.append((CharSequence) value);
+				} else if (value != null) {
+					out.append(String.valueOf(value));
+				}
+			} else {
+				Object items = model.get(node.text);
+
+				if (items instanceof Iterable == false) {
+					continue;
+				}
+
+				for (Object item : (Iterable<?>) items) {
+					TemplateModel itemModel = (TemplateModel) item;
+
+					renderNodes(node.children, out, name -> {
+						Object value = itemModel.get(name);
+						return value != null ? value : model.get(name);
+					});
+				}
+			}
+		}
+	}
+}
+
+// HtmlFileWriter
+// 렌더링 결과를 작은 문자 버퍼에 모았다가 UTF-8 로 인코딩해서 direct ByteBuffer 에 담고, 가득 차면 파일 채널로 내보낸다.
+// 페이지 전체를 String/byte[] 로 들고 있지 않는다.
+class HtmlFileWriter implements Appendable, Closeable {
+	private static final int CHAR_CHUNK_SIZE = 8 * 1024;
+	private static final ThreadLocal<CharsetEncoder> encoders = ThreadLocal
+			.withInitial(() -> StandardCharsets.UTF_8.newEncoder());
+	private static final ThreadLocal<CharBuffer> charChunks = ThreadLocal
+			.withInitial(() -> CharBuffer.allocate(CHAR_CHUNK_SIZE));
+
+	private FileChannel channel;
+	private CharsetEncoder encoder;
+	private CharBuffer chars;
+	private ByteBuffer buffer;
+	// 여러 페이지가 함께 쓰는 누적 바이트 수
+	private AtomicLong writtenBytes;
+
+	HtmlFileWriter(String filePath, AtomicLong writtenBytes) throws IOException {
+		this.writtenBytes = writtenBytes;
+		this.channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.encoder = encoders.get();
+		this.encoder.reset();
+		this.chars = charChunks.get();
+		this.chars.clear();
+		this.buffer = ByteBufferPool.acquire();
+	}
+
+	@Override
+	public Appendable append(CharSequence csq) throws IOException {
+		int length = csq.length();
+		int position = 0;
+
+		while (position < length) {
+			if (chars.hasRemaining() == false) {
+				encodeChars(false);
+			}
+
+			int count = Math.min(chars.remaining(), length - position);
+
+			if (csq instanceof String) {
+				chars.put((String) csq, position, position + count);
+			} else {
+				for (int i = position; i < position + count; i++) {
+					chars.put(csq.charAt(i));
+				}
+			}
+
+			position += count;
+		}
+
+		return this;
+	}
+
+	@Override
+	public Appendable append(CharSequence csq, int start, int end) throws IOException {
+		return append(csq.subSequence(start, end));
+	}
+
+	@Override
+	public Appendable append(char c) throws IOException {
+		if (chars.hasRemaining() == false) {
+			encodeChars(false);
+		}
+
+		chars.put(c);
+
+		return this;
+	}
+
+	// 모아둔 문자를 인코딩한다.(끝에 걸린 서로게이트 문자는 다음 번을 위해 남겨둔다)
+	private void encodeChars(boolean endOfInput) throws IOException {
+		chars.flip();
+
+		while (true) {
+			CoderResult result = encoder.encode(chars, buffer, endOfInput);
+
+			if (result.isOverflow()) {
+				flushBuffer();
+			} else if (result.isError()) {
+				result.throwException();
+			} else {
+				break;
+			}
+		}
+
+		chars.compact();
+	}
+
+	private void flushBuffer() throws IOException {
+		buffer.flip();
+
+		while (buffer.hasRemaining()) {
+			writtenBytes.addAndGet(channel.write(buffer));
+		}
+
+		buffer.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			encodeChars(true);
+
+			while (encoder.flush(buffer).isOverflow()) {
+				flushBuffer();
+			}
+
+			flushBuffer();
+		} finally {
+			ByteBufferPool.release(buffer);
+			buffer = null;
+			channel.close();
+		}
+	}
+}
+
+// ByteBufferPool
+// 페이지 쓰기용 direct ByteBuffer 를 만들어 두고 돌려 쓴다.
+class ByteBufferPool {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_POOLED_BUFFERS = 64;
+	private static final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+	public static ByteBuffer acquire() {
+		ByteBuffer buffer = buffers.poll();
+
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		}
+
+		return buffer;
+	}
+
+	public static void release(ByteBuffer buffer) {
+		buffer.clear();
+
+		if (buffers.size() < MAX_POOLED_BUFFERS) {
+			buffers.offer(buffer);
+		}
+	}
+}
+
+// TemplateRepository
+// 템플릿을 한번만 읽어서 컴파일해 두고, 파일의 수정 시각이나 크기가 바뀌었을 때만 다시 읽는다.
+// 다시 읽었는데 내용이 같으면 기존 템플릿을 그대로 쓴다.
+class TemplateRepository {
+	private String templateDirPath;
+	private Map<String, TemplateEntry> entries;
+
+	static class TemplateEntry {
+		long lastModified;
+		long size;
+		Template template;
+	}
+
+	TemplateRepository(String templateDirPath) {
+		this.templateDirPath = templateDirPath;
+		this.entries = new ConcurrentHashMap<>();
+	}
+
+	public synchronized Template get(String templatePath) {
+		File file = new File(templateDirPath, templatePath);
+		TemplateEntry entry = entries.get(templatePath);
+
+		if (entry != null && entry.lastModified == file.lastModified() && entry.size == file.length()) {
+			return entry.template;
+		}
+
+		TemplateEntry newEntry = new TemplateEntry();
+		newEntry.lastModified = file.lastModified();
+		newEntry.size = file.length();
+
+		String source = Util.getFileContents(file.getPath());
+
+		if (entry != null && entry.template.getSource().equals(source)) {
+			newEntry.template = entry.template;
+		} else {
+			if (entry != null) {
+				System.out.println("템플릿 변경 감지 : " + templatePath);
+			}
+
+			newEntry.template = Template.compile(source);
+		}
+
+		entries.put(templatePath, newEntry);
+
+		return newEntry.template;
+	}
+}
+
+// BuildSummary
+// 빌드 단계별 소요 시간과 처리량
+class BuildSummary {
+	private int parallelism;
+	private long startTime;
+	private List<String> phaseNames;
+	private List<Long> phaseNanos;
+	private List<Integer> phasePageCounts;
+
+	BuildSummary(int parallelism) {
+		this.parallelism = parallelism;
+		this.startTime = System.nanoTime();
+		this.phaseNames = new ArrayList<>();
+		this.phaseNanos = new ArrayList<>();
+		this.phasePageCounts = new ArrayList<>();
+
+		// 빌드 동안의 최대 힙 사용량을 보기 위해 힙 영역들의 최대치 기록을 지운다.
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	private static long getPeakHeapBytes() {
+		long peakBytes = 0;
+
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peakBytes += pool.getPeakUsage().getUsed();
+			}
+		}
+
+		return peakBytes;
+	}
+
+	public void addPhase(String phaseName, long phaseStartTime, int pageCount) {
+		long nanos = System.nanoTime() - phaseStartTime;
+		phaseNames.add(phaseName);
+		phaseNanos.add(nanos);
+		phasePageCounts.add(pageCount);
+
+		Metrics.recordNanos("build.phase." + phaseName, nanos);
+		Metrics.count("build.pagesRendered", pageCount);
+	}
+
+	public void print(long writtenBytes) {
+		long totalNanos = System.nanoTime() - startTime;
+		int totalPageCount = 0;
+
+		Metrics.recordNanos("build.total", totalNanos);
+		Metrics.count("build.bytesWritten", writtenBytes);
+
+		System.out.printf("== 빌드 요약 (병렬도 %d) ==\n", parallelism);
+
+		for (int i = 0; i < phaseNames.size(); i++) {
+			System.out.printf("%s | %d 페이지 | %d ms | %,d 페이지/초\n", phaseNames.get(i), phasePageCounts.get(i),
+					phaseNanos.get(i) / 1_000_000, perSec(phasePageCounts.get(i), phaseNanos.get(i)));
+			totalPageCount += phasePageCounts.get(i);
+		}
+
+		System.out.printf("전체 | %d 페이지 | %d ms | %,d 페이지/초\n", totalPageCount, totalNanos / 1_000_000,
+				perSec(totalPageCount, totalNanos));
+		System.out.printf("쓴 크기 %,d KB | 최대 힙 사용량 %,d MB\n", writtenBytes / 1024, getPeakHeapBytes() / 1024 / 1024);
+	}
+
+	private static long perSec(long count, long nanos) {
+		return count * 1_000_000_000L / Math.max(nanos, 1);
+	}
+}
+
+// BuildManifest
+// 만들어진 페이지 별로 입력의 서명(해시)을 기록해 두는 파일
+// 형식 : 파일명\t서명(16진수)
+class BuildManifest {
+	private String filePath;
+	private Map<String, Long> signatures;
+	private boolean changed;
+
+	private BuildManifest(String filePath) {
+		this.filePath = filePath;
+		this.signatures = new TreeMap<>();
+	}
+
+	public static BuildManifest load(String filePath) {
+		BuildManifest manifest = new BuildManifest(filePath);
+
+		if (Util.isFileExists(filePath) == false) {
+			return manifest;
+		}
+
+		try {
+			for (String line : Files.readAllLines(Paths.get(filePath), StandardCharsets.UTF_8)) {
+				int tabIndex = line.indexOf('\t');
+
+				if (tabIndex > 0) {
+					manifest.signatures.put(line.substring(0, tabIndex),
+							Long.parseUnsignedLong(line.substring(tabIndex + 1), 16));
+				}
+			}
+		} catch (IOException | NumberFormatException e) {
+			// 읽을 수 없는 매니페스트는 버리고 전체를 다시 만든다.
+			manifest.signatures.clear();
+		}
+
+		return manifest;
+	}
+
+	// 바뀐 것이 있을 때만 파일에 쓴다.
+	public void save() {
+		if (changed == false) {
+			return;
+		}
+
+		StringBuilder sb = new StringBuilder();
+
+		for (Map.Entry<String, Long> entry : signatures.entrySet()) {
+			sb.append(entry.getKey()).append('\t').append(Long.toHexString(entry.getValue())).append('\n');
+		}
+
+		Util.writeFileContents(filePath, sb.toString());
+		changed = false;
+	}
+
+	public boolean contains(String fileName) {
+		return signatures.containsKey(fileName);
+	}
+
+	public boolean isChanged(String fileName, long signature) {
+		Long oldSignature = signatures.get(fileName);
+		return oldSignature == null || oldSignature != signature;
+	}
+
+	public void put(String fileName, long signature) {
+		signatures.put(fileName, signature);
+		changed = true;
+	}
+
+	public void remove(String fileName) {
+		signatures.remove(fileName);
+		changed = true;
+	}
+
+	public void clear() {
+		signatures.clear();
+		changed = true;
+	}
+
+	public List<String> getFileNames() {
+		return new ArrayList<>(signatures.keySet());
+	}
+
+	// 입력 값들의 64비트 서명(ContentHash), 내용이 다르면 서명도 다르다고 보고 빌드를 건너뛴다.
+	public static long signature(Object... parts) {
+		ContentHash hash = new ContentHash();
+
+		for (Object part : parts) {
+			hash.add(part);
+		}
+
+		return hash.getValue();
+	}
+}
+
+// ContentHash
+// 값들의 실제 내용(UTF-8 바이트)을 SHA-256 으로 해시한다. 값마다 길이를 앞에 붙여서 ("ab", "c") 와 ("a", "bc") 가 섞이지 않는다.
+// Object.hashCode(32비트)는 다른 내용끼리 쉽게 겹쳐서 바뀐 페이지를 안 만들 수 있으므로 쓰지 않는다.
+// Appendable 로 쓰면 렌더링하는 문자를 작은 버퍼에서 바로 인코딩해서 해시한다.(파일 내용을 String 으로 만들지 않는다)
+class ContentHash implements Appendable {
+	private static final int CHAR_CHUNK_SIZE = 4 * 1024;
+
+	private MessageDigest digest;
+	private ByteBuffer lengthBuffer;
+	// append 한 문자를 함께 쓸 곳(없으면 null)
+	private Appendable out;
+	private CharsetEncoder encoder;
+	private CharBuffer chars;
+	private ByteBuffer bytes;
+
+	ContentHash() {
+		this(null);
+	}
+
+	ContentHash(Appendable out) {
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// 모든 JVM 에 있어야 하는 알고리즘
+			throw new IllegalStateException(e);
+		}
+
+		lengthBuffer = ByteBuffer.allocate(4);
+		this.out = out;
+	}
+
+	@Override
+	public Appendable append(CharSequence csq) throws IOException {
+		return append(csq, 0, csq.length());
+	}
+
+	@Override
+	public Appendable append(CharSequence csq, int start, int end) throws IOException {
+		for (int i = start; i < end; i++) {
+			putChar(csq.charAt(i));
+		}
+
+		if (out != null) {
+			out.append(csq, start, end);
+		}
+
+		return this;
+	}
+
+	@Override
+	public Appendable append(char c) throws IOException {
+		putChar(c);
+
+		if (out != null) {
+			out.append(c);
+		}
+
+		return this;
+	}
+
+	private void putChar(char c) {
+		if (chars == null) {
+			encoder = StandardCharsets.UTF_8.newEncoder();
+			chars = CharBuffer.allocate(CHAR_CHUNK_SIZE);
+			bytes = ByteBuffer.allocate(CHAR_CHUNK_SIZE * 3);
+		}
+
+		if (chars.hasRemaining() == false) {
+			encodeChars(false);
+		}
+
+		chars.put(c);
+	}
+
+	// 모아둔 문자를 인코딩해서 해시한다.(끝에 걸린 서로게이트 문자는 다음 번을 위해 남겨둔다)
+	private void encodeChars(boolean endOfInput) {
+		chars.flip();
+		CoderResult result = encoder.encode(chars, bytes, endOfInput);
+
+		if (endOfInput && result.isUnderflow()) {
+			result = encoder.flush(bytes);
+		}
+
+		if (result.isError()) {
+			// 짝이 없는 서로게이트 문자, 파일에 쓸 때(HtmlFileWriter)와 같은 예외로 알린다.
+			try {
+				result.throwException();
+			} catch (CharacterCodingException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		bytes.flip();
+		digest.update(bytes);
+		bytes.clear();
+		chars.compact();
+	}
+
+	// null 은 길이 -1 로 넣어서 빈 문자열과 구분한다.
+	public ContentHash add(Object part) {
+		// append 로 넣은 문자가 먼저
+		if (chars != null) {
+			encodeChars(false);
+		}
+
+		if (part == null) {
+			updateLength(-1);
+			return this;
+		}
+
+		byte[] bytes = String.valueOf(part).getBytes(StandardCharsets.UTF_8);
+		updateLength(bytes.length);
+		digest.update(bytes);
+
+		return this;
+	}
+
+	private void updateLength(int length) {
+		lengthBuffer.clear();
+		lengthBuffer.putInt(length);
+		digest.update(lengthBuffer.array());
+	}
+
+	// 해시의 앞 8바이트
+	public long getValue() {
+		if (chars != null) {
+			encodeChars(true);
+		}
+
+		return ByteBuffer.wrap(digest.digest()).getLong();
+	}
+}
+
+class ArticleService {
+	private ArticleDao articleDao;
+
+	ArticleService() {
+		articleDao = Factory.getArticleDao();
+	}
+
+	public String getLastArticleId() {
+		return articleDao.getLastArticleId();
+	}
+
+	public List<Article> getArticlesByBoardCode(String code) {
+		return articleDao.getArticlesByBoardCode(code);
+
+	}
+
+	public List<Integer> getArticleIdsByBoardCode(String code) {
+		return articleDao.getArticleIdsByBoardCode(code);
+	}
+
+	public List<Article> search(String query, int boardId, int limit) {
+		return articleDao.search(query, boardId, limit);
+	}
+
+	public List<Board> getBoards() {
+		return articleDao.getBoards();
+	}
+
+	public void articleDelete(int id) {
+		articleDao.articleDelete(id);
+	}
+
+	public void modify(String title, String body, int id) {
+		articleDao.modify(title, body, id);
+	}
+
+	public Article getArticlebyId(int id) {
+		return articleDao.getArticlebyId(id);
+	}
+
+	public int makeBoard(String name, String code) {
+		Board oldBoard = articleDao.getBoardByCode(code);
+
+		if (oldBoard != null) {
+			return -1;
+		}
+
+		Board board = new Board(name, code);
+		return articleDao.saveBoard(board);
+	}
+
+	public Board getBoard(int id) {
+		return articleDao.getBoard(id);
+	}
+
+	public int write(int boardId, int memberId, String title, String body) {
+		Article article = new Article(boardId, memberId, title, body);
+		return articleDao.save(article);
+	}
+
+	// 여러 게시물을 한번에 저장(번호는 이어서 발급된다)
+	public void writeAll(List<Article> articles) {
+		articleDao.saveAll(articles);
+	}
+
+	public List<Article> getArticles() {
+		return articleDao.getArticles();
+	}
+
+}
+
+class MemberService {
+	private MemberDao memberDao;
+
+	MemberService() {
+		memberDao = Factory.getMemberDao();
+	}
+
+	public String getLastMemberId() {
+		return memberDao.getLastMemberId();
+	}
+
+	public int getArticleCount(int memberId) {
+		return memberDao.getArticleCount(memberId);
+	}
+
+	public Member getMemberByLoginIdAndLoginPw(String loginId, String loginPw) {
+		return memberDao.getMemberByLoginIdAndLoginPw(loginId, loginPw);
+	}
+
+	public int join(String loginId, String loginPw, String name) {
+		Member oldMember = memberDao.getMemberByLoginId(loginId);
+
+		if (oldMember != null) {
+			return -1;
+		}
+
+		Member member = new Member(loginId, loginPw, name);
+		return memberDao.save(member);
+	}
+
+	public Member getMember(int id) {
+		return memberDao.getMember(id);
+	}
+}
+
+// Dao
+class ArticleDao {
+	DB db;
+
+	ArticleDao() {
+		db = Factory.getDB();
+	}
+
+	public String getLastArticleId() {
+		return db.getLastArticleId();
+	}
+
+	public List<Article> getArticlesByBoardCode(String code) {
+		return db.getArticlesByBoardCode(code);
+	}
+
+	public List<Integer> getArticleIdsByBoardCode(String code) {
+		return db.getArticleIdsByBoardCode(code);
+	}
+
+	public List<Article> search(String query, int boardId, int limit) {
+		return db.searchArticles(query, boardId, limit);
+	}
+
+	public List<Board> getBoards() {
+		return db.getBoards();
+	}
+
+	public void articleDelete(int id) {
+		db.articleDelete(id);
+	}
+
+	public void modify(String title, String body, int id) {
+		Article article = getArticlebyId(id);
+		db.modify(title, body, article);
+	}
+
+	public Article getArticlebyId(int id) {
+		return db.getArticlebyId(id);
+	}
+
+	public Board getBoardByCode(String code) {
+		return db.getBoardByCode(code);
+	}
+
+	public int saveBoard(Board board) {
+		return db.saveBoard(board);
+	}
+
+	public int save(Article article) {
+		return db.saveArticle(article);
+	}
+
+	public void saveAll(List<Article> articles) {
+		db.saveArticles(articles);
+	}
+
+	public Board getBoard(int id) {
+		return db.getBoard(id);
+	}
+
+	public List<Article> getArticles() {
+		return db.getArticles();
+	}
+
+}
+
+class MemberDao {
+	DB db;
+
+	MemberDao() {
+		db = Factory.getDB();
+	}
+
+	public String getLastMemberId() {
+		return db.getLastMemberId();
+	}
+
+	public int getArticleCount(int memberId) {
+		return db.getStatistics().getArticleCountByMemberId(memberId);
+	}
+
+	public Member getMemberByLoginIdAndLoginPw(String loginId, String loginPw) {
+		return db.getMemberByLoginIdAndLoginPw(loginId, loginPw);
+	}
+
+	public Member getMemberByLoginId(String loginId) {
+		return db.getMemberByLoginId(loginId);
+	}
+
+	public Member getMember(int id) {
+		return db.getMember(id);
+	}
+
+	public int save(Member member) {
+		return db.saveMember(member);
+	}
+}
+
+// DB
+class DB {
+	// 이름 -> 테이블(모든 테이블에 같은 일을 할 때), 행을 읽고 쓸 때는 타입이 있는 필드를 쓴다.
+	private Map<String, Table<?>> tables;
+	private Table<Article> articleTable;
+	private Table<Board> boardTable;
+	private Table<Member> memberTable;
+	private WriteAheadLog writeAheadLog;
+	// 게시물 제목/내용 검색 색인
+	private SearchIndex searchIndex;
+	// 회원/게시물 통계 카운터
+	private SiteStatistics statistics;
+	private String dbDirPath;
+
+	public DB() {
+		this("db");
+	}
+
+	// 다른 디렉토리의 DB(벤치마크/검사용)
+	DB(String dbDirPath) {
+		this.dbDirPath = dbDirPath;
+		Util.makeDir(dbDirPath);
+
+		tables = new HashMap<>();
+
+		articleTable = new Table<Article>(Article.class, dbDirPath, getStorageType("article"));
+		boardTable = new Table<Board>(Board.class, dbDirPath, getStorageType("board"));
+		memberTable = new Table<Member>(Member.class, dbDirPath, getStorageType("member"));
+
+		// 보조 인덱스 : 게시판 번호 -> 게시물, 게시판 코드 -> 게시판, 로그인 아이디 -> 회원
+		articleTable.addIndex("boardId", Article::getBoardId);
+		boardTable.addIndex("code", Board::getCode);
+		memberTable.addIndex("loginId", Member::getLoginId);
+
+		searchIndex = new SearchIndex(articleTable, articleTable.getTableDirPath() + "/search-index");
+		articleTable.addListener(searchIndex);
+
+		statistics = new SiteStatistics();
+		articleTable.addListener(statistics::onArticleChanged);
+		memberTable.addListener(statistics::onMemberChanged);
+
+		tables.put("article", articleTable);
+		tables.put("board", boardTable);
+		tables.put("member", memberTable);
+
+		// 쓰기 전 로그(-Dssg.wal=false 로 끄면 테이블 저장소에 바로 쓴다)
+		if (Boolean.parseBoolean(System.getProperty("ssg.wal", "true"))) {
+			try {
+				writeAheadLog = new WriteAheadLog(dbDirPath, tables);
+			} catch (IOException e) {
+				System.out.println("쓰기 전 로그를 열 수 없어 테이블 저장소에 바로 씁니다.");
+				e.printStackTrace();
+			}
+		}
+	}
+
+	// 지금 시점의 세 테이블을 그대로 보는 읽기 전용 보기, 다 쓰면 close 해야 이전 버전이 정리된다.
+	// 여는 순간 진행 중인 행 쓰기가 끝나기만 기다리고, 열린 동안의 쓰기는 기다리지 않는다.
+	// 통계 카운터도 스냅샷 시점의 값을 복사해 둔다.(처음이면 먼저 센다)
+	public DBSnapshot openSnapshot() {
+		return openSnapshot((Runnable) null);
+	}
+
+	// atSnapshot : 모든 테이블을 잠근 동안(스냅샷과 같은 시점에) 할 일, 행 쓰기 알림으로 바뀌는 것을 스냅샷과 맞춰서 가져갈 때
+	public DBSnapshot openSnapshot(Runnable atSnapshot) {
+		getStatistics();
+		return openSnapshot(null, atSnapshot);
+	}
+
+	// changedIds 를 주면 스냅샷과 같은 시점에 테이블 별로 마지막 백업 이후 바뀐 행 id 를 가져간다.
+	private DBSnapshot openSnapshot(Map<String, Set<Integer>> changedIds, Runnable atSnapshot) {
+		// 스냅샷은 캐시에 올라온 행의 버전으로 보므로 먼저 전체를 올린다.
+		for (Table<?> table : tables.values()) {
+			table.loadAll();
+		}
+
+		Map<String, Long> versions = new HashMap<>();
+		Map<String, Integer> lastIds = new HashMap<>();
+		SiteStatistics snapshotStatistics = null;
+		List<Table<?>> lockedTables = lockTables(tables.keySet());
+
+		try {
+			// 카운터는 행 쓰기 안에서 바뀌므로 모든 테이블을 잠근 동안 복사하면 스냅샷의 행과 맞는다.
+			if (statistics.isLoaded()) {
+				snapshotStatistics = statistics.copy();
+			}
+
+			for (String tableName : tables.keySet()) {
+				Table<?> table = tables.get(tableName);
+				versions.put(tableName, table.openSnapshot());
+				lastIds.put(tableName, table.getLastId());
+
+				if (changedIds != null) {
+					changedIds.put(tableName, table.takeChangedIds());
+				}
+			}
+
+			if (atSnapshot != null) {
+				atSnapshot.run();
+			}
+		} finally {
+			unlockTables(lockedTables);
+		}
+
+		return new DBSnapshot(tables, versions, lastIds, snapshotStatistics);
+	}
+
+	// 테이블마다 잠금이 따로 있으므로 여러 테이블을 같은 시점으로 보려면 그 테이블들을 모두 잠근다.
+	// 항상 테이블 이름 순으로 잡아서 서로 상대 잠금을 기다리며 멈추는 일이 없게 한다.
+	private List<Table<?>> lockTables(Collection<String> tableNames) {
+		List<String> sortedTableNames = new ArrayList<>(tableNames);
+		Collections.sort(sortedTableNames);
+
+		List<Table<?>> lockedTables = new ArrayList<>();
+
+		try {
+			for (String tableName : sortedTableNames) {
+				Table<?> table = tables.get(tableName);
+				table.lockTable();
+				lockedTables.add(table);
+			}
+		} catch (RuntimeException e) {
+			unlockTables(lockedTables);
+			throw e;
+		}
+
+		return lockedTables;
+	}
+
+	private void unlockTables(List<Table<?>> lockedTables) {
+		for (int i = lockedTables.size() - 1; i >= 0; i--) {
+			lockedTables.get(i).unlockTable();
+		}
+	}
+
+	// 통계 카운터, 처음 쓸 때 전체를 한번 센다.
+	public SiteStatistics getStatistics() {
+		if (statistics.isLoaded() == false) {
+			countStatistics(false);
+		}
+
+		return statistics;
+	}
+
+	// system verify : 카운터를 전체를 센 결과와 비교하고, 다르면 전체를 센 결과로 바로잡는다.(다른 항목을 돌려준다)
+	public List<String> verifyStatistics() {
+		return countStatistics(true);
+	}
+
+	// 세는 동안 쓰기를 막아서 카운터와 같은 시점을 센다.
+	private List<String> countStatistics(boolean verify) {
+		articleTable.loadAll();
+		memberTable.loadAll();
+
+		List<Table<?>> lockedTables = lockTables(Arrays.asList("article", "member"));
+
+		try {
+			if (verify == false && statistics.isLoaded()) {
+				return new ArrayList<>();
+			}
+
+			SiteStatistics scannedStatistics = SiteStatistics.count(articleTable.getRows(), memberTable.getRows());
+			List<String> differences = statistics.isLoaded() ? statistics.compare(scannedStatistics)
+					: new ArrayList<>();
+			statistics.reset(scannedStatistics);
+
+			return differences;
+		} finally {
+			unlockTables(lockedTables);
+		}
+	}
+
+	public String getBackupDirPath() {
+		return "backup";
+	}
+
+	// 온라인 백업 : 스냅샷 시점의 테이블을 backup/<table>/ 에 쓴다.(백업하는 동안에도 쓰기는 계속된다)
+	// 전체 백업이 없거나 full 이면 전체, 아니면 마지막 백업 이후 바뀐 행만
+	public List<String> backup(boolean full) {
+		List<String> results = new ArrayList<>();
+		Map<String, Set<Integer>> changedIds = new HashMap<>();
+
+		try (DBSnapshot snapshot = openSnapshot(changedIds, null)) {
+			for (String tableName : tables.keySet()) {
+				Table<?> table = tables.get(tableName);
+				Set<Integer> tableChangedIds = changedIds.get(tableName);
+
+				try {
+					results.add(tableName + " | " + table.backup(getBackupDirPath() + "/" + tableName,
+							snapshot.getVersion(tableName), tableChangedIds, full));
+				} catch (IOException e) {
+					table.putBackChangedIds(tableChangedIds);
+					results.add(tableName + " | 백업 실패 : " + e.getMessage());
+					e.printStackTrace();
+				}
+			}
+		}
+
+		return results;
+	}
+
+	// 복원 : 테이블마다 backupNo 번(0 이면 마지막) 백업 시점으로 되돌린다.
+	public List<String> restore(int backupNo) {
+		List<String> results = new ArrayList<>();
+
+		for (String tableName : tables.keySet()) {
+			Table<?> table = tables.get(tableName);
+			String backupDirPath = getBackupDirPath() + "/" + tableName;
+			int tableBackupNo = backupNo > 0 ? backupNo : TableBackup.getLastBackupNo(backupDirPath);
+
+			try {
+				TreeMap<Integer, byte[]> rows = TableBackup.readRows(backupDirPath, tableBackupNo);
+				results.add(tableName + " | " + tableBackupNo + "번 백업 | " + table.restore(rows));
+			} catch (IOException e) {
+				results.add(tableName + " | 복원 실패 : " + e.getMessage());
+			}
+		}
+
+		return results;
+	}
+
+	public SearchIndex getSearchIndex() {
+		return searchIndex;
+	}
+
+	// 제목/내용 검색(관련도 순), boardId 가 0 이면 모든 게시판
+	public List<Article> searchArticles(String query, int boardId, int limit) {
+		List<Article> articles = new ArrayList<>();
+
+		for (int id : searchIndex.search(query, boardId, limit)) {
+			Article article = getArticlebyId(id);
+
+			if (article != null) {
+				articles.add(article);
+			}
+		}
+
+		return articles;
+	}
+
+	// 쓰기 전 로그에 모아둔 기록을 모두 반영하고 번호 발급기와 검색 색인을 정리한다.
+	public void close() {
+		if (writeAheadLog != null) {
+			writeAheadLog.close();
+		}
+
+		searchIndex.save();
+
+		for (Table<?> table : tables.values()) {
+			table.close();
+		}
+	}
+		
+
+	public String getLastArticleId() {
+		return articleTable.getLastArticleId();
+	}
+
+	public String getLastMemberId() {
+		return memberTable.getLastMemberId();
+	}
+
+	public List<Article> getArticlesByBoardCode(String code) {
+
+		// Board 코드 free 2 / notice 1
+		Board board = getBoardByCode(code);
+
+		if (board == null) {
+			return new ArrayList<>();
+		}
+
+		// boardId 인덱스로 해당 게시판의 게시물만 가져온다.
+		return articleTable.getRowsByIndex("boardId", board.getId());
+	}
+
+	// 게시판의 게시물 번호(오름차순)만 가져온다.
+	public List<Integer> getArticleIdsByBoardCode(String code) {
+		Board board = getBoardByCode(code);
+
+		if (board == null) {
+			return new ArrayList<>();
+		}
+
+		return articleTable.getIdsByIndex("boardId", board.getId());
+	}
+
+	public void articleDelete(int id) {
+		articleTable.delete(id);
+
+	}
+
+	public void modify(String title, String body, Article article) {
+		articleTable.modify(title, body, article);
+	}
+
+	public Article getArticlebyId(int id) {
+		return articleTable.getRow(id);
+	}
+
+	public Member getMemberByLoginIdAndLoginPw(String loginId, String loginPw) {
+		Member member = getMemberByLoginId(loginId);
+
+		if (member != null && member.getLoginPw().equals(loginPw)) {
+			return member;
+		}
+
+		return null;
+	}
+
+	public Member getMemberByLoginId(String loginId) {
+		return memberTable.getRowByIndex("loginId", loginId);
+	}
+
+	public List<Member> getMembers() {
+		return memberTable.getRows();
+	}
+
+	public Board getBoardByCode(String code) {
+		return boardTable.getRowByIndex("code", code);
+	}
+
+	public List<Board> getBoards() {
+		return boardTable.getRows();
+	}
+
+	public Member getMember(int id) {
+		return memberTable.getRow(id);
+	}
+
+	public int saveBoard(Board board) {
+		return boardTable.saveRow(board);
+	}
+
+	public String getDirPath() {
+		return dbDirPath;
+	}
+
+	// 테이블 별 저장 엔진(json/log), 예) -Dssg.storage=log -Dssg.storage.member=json
+	public String getStorageType(String tableName) {
+		return System.getProperty("ssg.storage." + tableName, System.getProperty("ssg.storage", "json"));
+	}
+
+	public int saveMember(Member member) {
+		return memberTable.saveRow(member);
+	}
+
+	public Board getBoard(int id) {
+		return boardTable.getRow(id);
+	}
+
+	public List<Article> getArticles() {
+		return articleTable.getRows();
+	}
+
+	public int saveArticle(Article article) {
+		return articleTable.saveRow(article);
+	}
+
+	public void saveArticles(List<Article> articles) {
+		articleTable.saveRows(articles);
+	}
+
+	public Set<String> getTableNames() {
+		return tables.keySet();
+	}
+
+	// 저장소에서 행을 다시 읽어 캐시에 반영(바뀌었으면 true)
+	public boolean refreshRow(String tableName, int id) {
+		Table<?> table = tables.get(tableName);
+
+		if (table == null) {
+			return false;
+		}
+
+		return table.refreshRow(id);
+	}
+
+	// 어느 테이블이든 바뀔 때마다 올라가는 버전
+	public long getVersion() {
+		long version = 0;
+
+		for (Table<?> table : tables.values()) {
+			version += table.getVersion();
+		}
+
+		return version;
+	}
+
+	// 테이블 별 캐시 적중/미스 현황
+	public List<String> getCacheStats() {
+		List<String> stats = new ArrayList<>();
+
+		for (String tableName : tables.keySet()) {
+			Table<?> table = tables.get(tableName);
+			stats.add(tableName + " | 적중 " + table.getCacheHitCount() + " | 미스 " + table.getCacheMissCount()
+					+ " | 캐시된 행 " + table.getCachedRowCount());
+		}
+
+		if (writeAheadLog != null) {
+			stats.add(writeAheadLog.getStats());
+		}
+
+		return stats;
+	}
+}
+
+// DBSnapshot
+// DB.openSnapshot() 시점의 게시물/게시판/회원. 열린 동안 다른 스레드가 써도 보이는 내용은 바뀌지 않는다.
+class DBSnapshot implements Closeable {
+	private Map<String, Table<?>> tables;
+	private Map<String, Long> versions;
+	private Map<String, Integer> lastIds;
+	// 스냅샷 시점으로 다시 묶은 인덱스(테이블.인덱스 -> 키 -> id 들)
+	private Map<String, Map<Object, List<Integer>>> indexes;
+	// 스냅샷 시점의 통계 카운터 복사본(백업용 스냅샷처럼 카운터를 세기 전이면 null)
+	private SiteStatistics statistics;
+	private boolean closed;
+
+	DBSnapshot(Map<String, Table<?>> tables, Map<String, Long> versions, Map<String, Integer> lastIds,
+			SiteStatistics statistics) {
+		this.tables = tables;
+		this.versions = versions;
+		this.lastIds = lastIds;
+		this.statistics = statistics;
+		this.indexes = new ConcurrentHashMap<>();
+	}
+
+	public long getVersion(String tableName) {
+		return versions.get(tableName);
+	}
+
+	private Object getRow(String tableName, int id) {
+		return tables.get(tableName).getRowAt(id, versions.get(tableName));
+	}
+
+	private <R> List<R> getRows(String tableName, Class<R> rowCls) {
+		return tables.get(tableName).getRowsAt(versions.get(tableName), rowCls);
+	}
+
+	private List<Integer> getIdsByIndex(String tableName, String indexName, Object key) {
+		Map<Object, List<Integer>> index = indexes.computeIfAbsent(tableName + "." + indexName,
+				name -> tables.get(tableName).getIndexAt(indexName, versions.get(tableName)));
+
+		return index.getOrDefault(key, Collections.emptyList());
+	}
+
+	public Article getArticle(int id) {
+		return (Article) getRow("article", id);
+	}
+
+	public List<Article> getArticles() {
+		return getRows("article", Article.class);
+	}
+
+	// 게시판의 게시물 번호(오름차순)
+	public List<Integer> getArticleIdsByBoardCode(String code) {
+		Board board = getBoardByCode(code);
+
+		if (board == null) {
+			return new ArrayList<>();
+		}
+
+		return getIdsByIndex("article", "boardId", board.getId());
+	}
+
+	public List<Board> getBoards() {
+		return getRows("board", Board.class);
+	}
+
+	public Board getBoardByCode(String code) {
+		List<Integer> ids = getIdsByIndex("board", "code", code);
+
+		if (ids.isEmpty()) {
+			return null;
+		}
+
+		return (Board) getRow("board", ids.get(0));
+	}
+
+	public Member getMember(int id) {
+		return (Member) getRow("member", id);
+	}
+
+	public String getLastArticleId() {
+		return "" + lastIds.get("article");
+	}
+
+	public String getLastMemberId() {
+		return "" + lastIds.get("member");
+	}
+
+	public SiteStatistics getStatistics() {
+		return statistics;
+	}
+
+	@Override
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+
+		for (String tableName : versions.keySet()) {
+			tables.get(tableName).closeSnapshot(versions.get(tableName));
+		}
+	}
+}
+
+// Table
+class Table<T> {
+	private static final int ROW_LOCK_STRIPES = 64;
+
+	private Class<T> dataCls;
+	private String tableName;
+	private String tableDirPath;
+	// 행 캐시(id 순 정렬), 테이블은 한번만 읽고 이후에는 메모리에서 제공
+	// 읽기는 잠금 없이 캐시에서 바로 한다.(캐시된 행 객체는 바꾸지 않고 새 객체로 바꿔 끼운다)
+	// 값은 행의 버전 사슬(최신 -> 이전)이고, 열린 스냅샷이 볼 수 있는 이전 버전만 남긴다.
+	private ConcurrentSkipListMap<Integer, RowVersion<T>> rowCache;
+	// 이전 버전이나 삭제 표시가 남아있는 행(스냅샷이 닫히면 정리)
+	private Set<Integer> rowsWithHistory;
+	// 열린 스냅샷의 버전(버전 -> 개수)
+	private ConcurrentSkipListMap<Long, Integer> snapshotVersions;
+	private volatile boolean allRowsLoaded;
+	private AtomicLong cacheHitCount = new AtomicLong();
+	private AtomicLong cacheMissCount = new AtomicLong();
+	// 행 쓰기는 테이블 읽기 잠금 + 행 잠금, 테이블 전체 읽어 올리기는 테이블 쓰기 잠금
+	// 행 잠금은 id 로 나눈 줄무늬라서 서로 다른 행의 쓰기는 거의 줄 서지 않는다.
+	private ReentrantReadWriteLock tableLock = new ReentrantReadWriteLock();
+	private ReentrantLock[] rowLocks;
+
+	// 행의 한 버전(row 가 null 이면 삭제된 버전), version 은 이 버전을 만든 쓰기의 테이블 버전
+	static class RowVersion<T> {
+		final long version;
+		final T row;
+		volatile RowVersion<T> previous;
+
+		RowVersion(long version, T row, RowVersion<T> previous) {
+			this.version = version;
+			this.row = row;
+			this.previous = previous;
+		}
+	}
+	// 보조 인덱스(이름 -> 인덱스), 캐시와 함께 갱신된다.
+	private Map<String, TableIndex<T>> indexes;
+	// 행을 실제로 저장하는 저장 엔진
+	private TableStorage storage;
+	// 저장/수정/삭제마다 올라가는 버전
+	private AtomicLong version = new AtomicLong();
+	// 있으면 저장소 대신 로그에 먼저 쓴다.(저장소 반영은 로그 쓰기 스레드가 한다)
+	private WriteAheadLog writeAheadLog;
+	// 번호 발급기(lastId.txt 에는 예약해 둔 번호까지 기록)
+	private IdSequence idSequence;
+	// 마지막 백업 이후 바뀐 행
+	private ChangeTracker changeTracker;
+	// 행이 바뀔 때 알림을 받을 곳(검색 색인 등)
+	private List<RowListener<T>> listeners = new CopyOnWriteArrayList<>();
+	// 저장소에서 읽은 행의 json 해석 시간
+	private LatencyHistogram decodeTime;
+
+	public Table(Class<T> dataCls, String dbDirPath) {
+		this(dataCls, dbDirPath, "json");
+	}
+
+	public Table(Class<T> dataCls, String dbDirPath, String storageType) {
+		this.dataCls = dataCls;
+		this.tableName = Util.lcfirst(dataCls.getCanonicalName());
+		this.tableDirPath = dbDirPath + "/" + this.tableName;
+		this.rowCache = new ConcurrentSkipListMap<>();
+		this.rowsWithHistory = ConcurrentHashMap.newKeySet();
+		this.snapshotVersions = new ConcurrentSkipListMap<>();
+		this.indexes = new HashMap<>();
+		this.rowLocks = new ReentrantLock[ROW_LOCK_STRIPES];
+
+		for (int i = 0; i < rowLocks.length; i++) {
+			rowLocks[i] = new ReentrantLock();
+		}
+
+		Util.makeDir(tableDirPath);
+
+		this.idSequence = new IdSequence(tableDirPath + "/lastId.txt");
+		this.changeTracker = new ChangeTracker(tableDirPath + "/backup-changes.txt");
+		this.storage = new MeteredTableStorage(tableName, openStorage(storageType));
+		this.decodeTime = Metrics.histogram("table." + tableName + ".decode");
+	}
+
+	// json : 행 하나당 json 파일 하나(기존 방식)
+	// log : 세그먼트 파일에 이어쓰기(기존 json 파일이 있으면 처음 열 때 옮겨온다)
+	private TableStorage openStorage(String storageType) {
+		if (storageType.equals("log")) {
+			try {
+				return new SegmentLogStorage(tableDirPath);
+			} catch (IOException e) {
+				System.out.println(tableName + " 로그 저장소를 열 수 없어 json 저장소를 사용합니다.");
+				e.printStackTrace();
+			}
+		}
+
+		return new JsonFileStorage(tableDirPath);
+	}
+
+	public String getLastArticleId() {
+		return "" + idSequence.getLastId();
+	}
+
+	public String getLastMemberId() {
+		String lastId = "" + idSequence.getLastId();
+		return lastId;
+	}
+
+	public int getLastId() {
+		return idSequence.getLastId();
+	}
+
+	public void modify(String title, String body, Article article) {
+		int id = article.getId();
+
+		lockRow(id);
+
+		try {
+			// 다른 스레드가 읽고 있을 수 있으므로 캐시된 객체 대신 복사본을 고쳐서 바꿔 끼운다.
+			Article modifiedArticle = JsonCodec.read(JsonCodec.write(article), Article.class);
+			modifiedArticle.setTitle(title);
+			modifiedArticle.setBody(body);
+			T data = dataCls.cast(modifiedArticle);
+
+			writeRow(id, data);
+
+			putRow(id, data);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			unlockRow(id);
+		}
+	}
+
+	private void lockRow(int id) {
+		tableLock.readLock().lock();
+		rowLocks[Math.floorMod(id, rowLocks.length)].lock();
+	}
+
+	private void unlockRow(int id) {
+		rowLocks[Math.floorMod(id, rowLocks.length)].unlock();
+		tableLock.readLock().unlock();
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	public String getTableDirPath() {
+		return tableDirPath;
+	}
+
+	public void addListener(RowListener<T> listener) {
+		listeners.add(listener);
+	}
+
+	public int saveRow(T data) {
+		Dto dto = (Dto) data;
+
+		if (dto.getId() == 0) {
+			dto.setId(idSequence.next());
+		} else {
+			idSequence.ensureAtLeast(dto.getId());
+		}
+
+		lockRow(dto.getId());
+
+		try {
+			writeRow(dto.getId(), data);
+
+			// 저장소에 쓴 내용을 캐시에도 반영(write-through), 쓰지 못했으면 캐시도 그대로 둔다.
+			putRow(dto.getId(), data);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			unlockRow(dto.getId());
+		}
+
+		return dto.getId();
+	};
+
+	// 새 행 여러개를 한번에 저장한다. 번호는 한번에 이어서 발급하고,
+	// 로그를 쓰면 모두 한번에 넣은 뒤 마지막 기록이 fsync 될 때까지 한번만 기다리고, 아니면 저장소를 한번만 sync 한다.
+	public void saveRows(List<T> rows) {
+		if (rows.isEmpty()) {
+			return;
+		}
+
+		int firstId = idSequence.nextBlock(rows.size());
+		int[] ids = new int[rows.size()];
+		List<byte[]> datas = new ArrayList<>(rows.size());
+
+		try {
+			for (int i = 0; i < rows.size(); i++) {
+				ids[i] = firstId + i;
+				((Dto) rows.get(i)).setId(ids[i]);
+				datas.add(JsonCodec.write(rows.get(i)));
+			}
+
+			if (writeAheadLog != null) {
+				long lastSeq = writeAheadLog.appendAll(tableName, WriteAheadLog.RECORD_PUT, ids, datas);
+				writeAheadLog.awaitDurable(lastSeq);
+			} else {
+				for (int i = 0; i < ids.length; i++) {
+					storage.writeRow(ids[i], datas.get(i));
+				}
+
+				storage.sync();
+			}
+
+			putRows(ids, rows);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void putRows(int[] ids, List<T> rows) {
+		for (int i = 0; i < ids.length; i++) {
+			lockRow(ids[i]);
+
+			try {
+				putRow(ids[i], rows.get(i));
+			} finally {
+				unlockRow(ids[i]);
+			}
+		}
+	}
+
+	private void writeRow(int id, T data) throws IOException {
+		if (writeAheadLog != null) {
+			writeAheadLog.append(tableName, WriteAheadLog.RECORD_PUT, id, JsonCodec.write(data));
+		} else {
+			storage.writeRow(id, JsonCodec.write(data));
+		}
+	}
+
+	void setWriteAheadLog(WriteAheadLog writeAheadLog) {
+		this.writeAheadLog = writeAheadLog;
+	}
+
+	// 로그에 기록된 변경을 저장소에 반영(로그 쓰기 스레드, 시작 시 복구)
+	void applyLogRecord(byte type, int id, byte[] data) throws IOException {
+		if (type == WriteAheadLog.RECORD_PUT) {
+			storage.writeRow(id, data);
+		} else {
+			storage.deleteRow(id);
+		}
+	}
+
+	// 로그에 기록된 번호는 다시 발급하지 않는다.(복구 시)
+	void ensureIdAtLeast(int id) {
+		idSequence.ensureAtLeast(id);
+	}
+
+	// 실제로 발급한 마지막 번호와 백업할 행을 남긴다.(정상 종료 시)
+	void close() {
+		idSequence.close();
+		changeTracker.close();
+	}
+
+	void syncStorage() throws IOException {
+		storage.sync();
+	}
+
+	public T getRow(int id) {
+		RowVersion<T> rowVersion = rowCache.get(id);
+
+		// 전체를 이미 읽었다면 캐시에 없는 행은 존재하지 않는 행
+		if (rowVersion != null || allRowsLoaded) {
+			cacheHitCount.incrementAndGet();
+			return rowVersion == null ? null : rowVersion.row;
+		}
+
+		cacheMissCount.incrementAndGet();
+
+		lockRow(id);
+
+		try {
+			// 기다리는 동안 다른 스레드가 올렸을 수 있다.
+			rowVersion = rowCache.get(id);
+
+			if (rowVersion != null) {
+				return rowVersion.row;
+			}
+
+			// 로그에만 있는 행은 캐시에 있다.(캐시에 없으면 삭제 대기 중인 행)
+			if (isPending(id)) {
+				return null;
+			}
+
+			T row = readRow(id);
+
+			if (row != null) {
+				cacheRow(id, row);
+			}
+
+			return row;
+		} finally {
+			unlockRow(id);
+		}
+	}
+
+	private T decodeRow(ByteBuffer data) throws IOException {
+		long startTime = System.nanoTime();
+
+		try {
+			return JsonCodec.read(data, dataCls);
+		} finally {
+			decodeTime.record(System.nanoTime() - startTime);
+		}
+	}
+
+	private T readRow(int id) {
+		try {
+			ByteBuffer data = storage.readRow(id);
+
+			if (data != null) {
+				return decodeRow(data);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		return null;
+	}
+
+	Set<Integer> takeChangedIds() {
+		return changeTracker.take();
+	}
+
+	void putBackChangedIds(Set<Integer> ids) {
+		changeTracker.putBack(ids);
+	}
+
+	// 스냅샷 버전의 행을 백업 파일 하나로 쓴다.
+	// 전체 백업 : 보이는 모든 행, 증분 백업 : 바뀐 행(그 사이 지워졌으면 삭제 기록)
+	String backup(String backupDirPath, long snapshotVersion, Set<Integer> changedIds, boolean full)
+			throws IOException {
+		full = full || changeTracker.isFullBackupNeeded() || TableBackup.hasFullBackup(backupDirPath) == false;
+
+		try (TableBackup backup = new TableBackup(backupDirPath, full)) {
+			if (full) {
+				for (Map.Entry<Integer, RowVersion<T>> entry : rowCache.entrySet()) {
+					T row = getVisibleRow(entry.getValue(), snapshotVersion);
+
+					if (row != null) {
+						backup.put(entry.getKey(), JsonCodec.write(row));
+					}
+				}
+			} else {
+				for (int id : new TreeSet<>(changedIds)) {
+					T row = getRowAt(id, snapshotVersion);
+
+					if (row != null) {
+						backup.put(id, JsonCodec.write(row));
+					} else {
+						backup.delete(id);
+					}
+				}
+			}
+
+			String result = (full ? "전체 " : "증분 ") + backup.commit();
+			changeTracker.backupDone();
+
+			return result;
+		}
+	}
+
+	// 백업의 행들로 테이블을 맞춘다.(백업에 없는 행은 지우고, 내용이 다른 행만 다시 쓴다)
+	String restore(Map<Integer, byte[]> rows) throws IOException {
+		loadAll();
+
+		int deletedCount = 0;
+		int writtenCount = 0;
+
+		for (Map.Entry<Integer, RowVersion<T>> entry : rowCache.entrySet()) {
+			if (entry.getValue().row != null && rows.containsKey(entry.getKey()) == false) {
+				delete(entry.getKey());
+				deletedCount++;
+			}
+		}
+
+		for (Map.Entry<Integer, byte[]> entry : rows.entrySet()) {
+			T row = getRowAt(entry.getKey(), Long.MAX_VALUE);
+
+			if (row != null && Arrays.equals(JsonCodec.write(row), entry.getValue())) {
+				continue;
+			}
+
+			T restoredRow = JsonCodec.read(entry.getValue(), dataCls);
+			((Dto) restoredRow).setId(entry.getKey());
+			saveRow(restoredRow);
+			writtenCount++;
+		}
+
+		return "다시 쓴 행 " + writtenCount + " | 지운 행 " + deletedCount;
+	}
+
+	void delete(int id) {
+		lockRow(id);
+
+		try {
+			if (writeAheadLog != null) {
+				writeAheadLog.append(tableName, WriteAheadLog.RECORD_DELETE, id, new byte[0]);
+			} else {
+				storage.deleteRow(id);
+			}
+
+			removeRow(id);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			unlockRow(id);
+		}
+	};
+
+	List<T> getRows() {
+		if (allRowsLoaded) {
+			cacheHitCount.incrementAndGet();
+		} else {
+			loadAllRows();
+		}
+
+		List<T> rows = new ArrayList<>(rowCache.size());
+
+		for (RowVersion<T> rowVersion : rowCache.values()) {
+			if (rowVersion.row != null) {
+				rows.add(rowVersion.row);
+			}
+		}
+
+		return rows;
+	};
+
+	// 테이블 전체를 한번 읽어서 캐시에 올린다.(읽는 동안 행 쓰기는 기다린다)
+	private void loadAllRows() {
+		tableLock.writeLock().lock();
+
+		try {
+			if (allRowsLoaded) {
+				return;
+			}
+
+			storage.scanRows((id, data) -> {
+				if (rowCache.containsKey(id) || isPending(id)) {
+					return;
+				}
+
+				cacheMissCount.incrementAndGet();
+				cacheRow(id, decodeRow(data));
+			});
+
+			allRowsLoaded = true;
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			tableLock.writeLock().unlock();
+		}
+	}
+
+	// 저장소에서 읽은 행을 캐시와 인덱스에 올린다.(모든 스냅샷이 보는 기본 버전)
+	private void cacheRow(int id, T row) {
+		rowCache.put(id, new RowVersion<>(0, row, null));
+
+		for (TableIndex<T> index : indexes.values()) {
+			index.put(id, row);
+		}
+	}
+
+	// 쓰기 : 새 버전을 사슬 앞에 붙인다.(행 잠금 안에서 호출)
+	private void putRow(int id, T row) {
+		T oldRow = installRowVersion(id, row);
+
+		for (TableIndex<T> index : indexes.values()) {
+			index.put(id, row);
+		}
+
+		for (RowListener<T> listener : listeners) {
+			listener.onRowChanged(id, oldRow, row);
+		}
+	}
+
+	// 삭제 : 삭제 표시 버전을 붙이고 인덱스에서 뺀다.(행 잠금 안에서 호출)
+	private void removeRow(int id) {
+		T oldRow = installRowVersion(id, null);
+
+		for (TableIndex<T> index : indexes.values()) {
+			index.remove(id);
+		}
+
+		for (RowListener<T> listener : listeners) {
+			listener.onRowChanged(id, oldRow, null);
+		}
+	}
+
+	// 새 버전을 붙이고 바로 전의 최신 행을 돌려준다.
+	private T installRowVersion(int id, T row) {
+		changeTracker.add(id);
+
+		RowVersion<T> previousVersion = rowCache.get(id);
+		RowVersion<T> rowVersion = new RowVersion<>(version.incrementAndGet(), row, previousVersion);
+		pruneRowVersions(rowVersion);
+
+		if (rowVersion.row == null && rowVersion.previous == null) {
+			rowCache.remove(id);
+		} else {
+			rowCache.put(id, rowVersion);
+
+			if (rowVersion.row == null || rowVersion.previous != null) {
+				rowsWithHistory.add(id);
+			}
+		}
+
+		return previousVersion == null ? null : previousVersion.row;
+	}
+
+	// 가장 오래된 스냅샷이 보는 버전보다 이전 버전은 아무도 보지 않으므로 잘라낸다.
+	private void pruneRowVersions(RowVersion<T> rowVersion) {
+		Map.Entry<Long, Integer> oldestSnapshot = snapshotVersions.firstEntry();
+		long oldestVersion = oldestSnapshot == null ? Long.MAX_VALUE : oldestSnapshot.getKey();
+
+		while (rowVersion != null) {
+			if (rowVersion.version <= oldestVersion) {
+				rowVersion.previous = null;
+				return;
+			}
+
+			rowVersion = rowVersion.previous;
+		}
+	}
+
+	// 스냅샷 열기 : 이 시점까지의 쓰기가 모두 끝난 상태에서 테이블 버전을 기록한다.
+	// (DB 가 테이블 잠금을 쥔 채로 호출한다)
+	long openSnapshot() {
+		long snapshotVersion = version.get();
+		snapshotVersions.merge(snapshotVersion, 1, Integer::sum);
+		return snapshotVersion;
+	}
+
+	// 스냅샷 닫기 : 더 이상 아무도 보지 않는 이전 버전과 삭제 표시를 정리한다.
+	void closeSnapshot(long snapshotVersion) {
+		snapshotVersions.computeIfPresent(snapshotVersion, (key, count) -> count == 1 ? null : count - 1);
+
+		for (Integer id : rowsWithHistory) {
+			lockRow(id);
+
+			try {
+				RowVersion<T> rowVersion = rowCache.get(id);
+
+				if (rowVersion != null) {
+					pruneRowVersions(rowVersion);
+
+					if (rowVersion.previous == null && rowVersion.row == null) {
+						rowCache.remove(id);
+					}
+				}
+
+				if (rowVersion == null || rowVersion.previous == null) {
+					rowsWithHistory.remove(id);
+				}
+			} finally {
+				unlockRow(id);
+			}
+		}
+	}
+
+	// 스냅샷 버전에서 보이는 행
+	T getRowAt(int id, long snapshotVersion) {
+		return getVisibleRow(rowCache.get(id), snapshotVersion);
+	}
+
+	// 스냅샷 버전에서 보이는 모든 행(id 순)
+	// rowCls 는 이 테이블의 행 타입(이름으로 테이블을 찾는 DBSnapshot 이 타입을 확인하면서 담는다)
+	<R> List<R> getRowsAt(long snapshotVersion, Class<R> rowCls) {
+		List<R> rows = new ArrayList<>(rowCache.size());
+
+		for (RowVersion<T> rowVersion : rowCache.values()) {
+			T row = getVisibleRow(rowVersion, snapshotVersion);
+
+			if (row != null) {
+				rows.add(rowCls.cast(row));
+			}
+		}
+
+		return rows;
+	}
+
+	// 스냅샷 버전에서 보이는 행들의 인덱스 키 -> id 들(오름차순)
+	// 인덱스는 최신 상태만 가지므로 보이는 행들로 다시 묶는다.
+	Map<Object, List<Integer>> getIndexAt(String indexName, long snapshotVersion) {
+		TableIndex<T> index = indexes.get(indexName);
+		Map<Object, List<Integer>> idsByKey = new HashMap<>();
+
+		for (Map.Entry<Integer, RowVersion<T>> entry : rowCache.entrySet()) {
+			T row = getVisibleRow(entry.getValue(), snapshotVersion);
+
+			if (row != null) {
+				idsByKey.computeIfAbsent(index.getKey(row), key -> new ArrayList<>()).add(entry.getKey());
+			}
+		}
+
+		return idsByKey;
+	}
+
+	private T getVisibleRow(RowVersion<T> rowVersion, long snapshotVersion) {
+		while (rowVersion != null && rowVersion.version > snapshotVersion) {
+			rowVersion = rowVersion.previous;
+		}
+
+		return rowVersion == null ? null : rowVersion.row;
+	}
+
+	// 테이블 쓰기 잠금 : 잡고 있는 동안 이 테이블의 행 쓰기만 기다린다.(다른 테이블은 상관없다)
+	// 여러 테이블을 함께 잠글 때는 DB 가 이름 순으로 잡는다.
+	void lockTable() {
+		tableLock.writeLock().lock();
+	}
+
+	void unlockTable() {
+		tableLock.writeLock().unlock();
+	}
+
+	void loadAll() {
+		if (allRowsLoaded == false) {
+			loadAllRows();
+		}
+	}
+
+	public void addIndex(String indexName, Function<T, Object> keyGetter) {
+		TableIndex<T> index = new TableIndex<>(keyGetter);
+
+		for (Map.Entry<Integer, RowVersion<T>> entry : rowCache.entrySet()) {
+			if (entry.getValue().row != null) {
+				index.put(entry.getKey(), entry.getValue().row);
+			}
+		}
+
+		indexes.put(indexName, index);
+	}
+
+	// 인덱스 키와 일치하는 행들(id 순)
+	public List<T> getRowsByIndex(String indexName, Object key) {
+		// 인덱스는 테이블 전체가 캐시에 올라와 있어야 완전하다.
+		if (allRowsLoaded == false) {
+			loadAllRows();
+		}
+
+		List<T> rows = new ArrayList<>();
+
+		for (int id : indexes.get(indexName).getIds(key)) {
+			T row = getRowAt(id, Long.MAX_VALUE);
+
+			// 지워지는 중인 행(캐시에서 먼저 빠지고 인덱스에서 나중에 빠진다)
+			if (row != null) {
+				rows.add(row);
+			}
+		}
+
+		cacheHitCount.incrementAndGet();
+
+		return rows;
+	}
+
+	// 인덱스 키와 일치하는 행 id 들(오름차순)
+	public List<Integer> getIdsByIndex(String indexName, Object key) {
+		if (allRowsLoaded == false) {
+			loadAllRows();
+		}
+
+		cacheHitCount.incrementAndGet();
+
+		return new ArrayList<>(indexes.get(indexName).getIds(key));
+	}
+
+	// 인덱스 키와 일치하는 첫번째 행
+	public T getRowByIndex(String indexName, Object key) {
+		if (allRowsLoaded == false) {
+			loadAllRows();
+		}
+
+		cacheHitCount.incrementAndGet();
+
+		for (int id : indexes.get(indexName).getIds(key)) {
+			T row = getRowAt(id, Long.MAX_VALUE);
+
+			if (row != null) {
+				return row;
+			}
+		}
+
+		return null;
+	}
+
+	public long getVersion() {
+		return version.get();
+	}
+
+	private boolean isPending(int id) {
+		return writeAheadLog != null && writeAheadLog.isPending(tableName, id);
+	}
+
+	// 다른 곳(다른 프로세스 등)에서 저장소의 행을 바꿨을 때 캐시를 맞춘다.
+	// 쓰는 도중의 파일을 읽어 해석이 안 되면 무시한다.(쓰기가 끝나면 다시 알림이 온다)
+	public boolean refreshRow(int id) {
+		lockRow(id);
+
+		try {
+			return refreshLockedRow(id);
+		} finally {
+			unlockRow(id);
+		}
+	}
+
+	private boolean refreshLockedRow(int id) {
+		// 아직 반영 중인 자기 쓰기의 알림이면 캐시가 더 최신이다.
+		if (isPending(id)) {
+			return false;
+		}
+
+		ByteBuffer data;
+
+		try {
+			data = storage.readRow(id);
+		} catch (IOException e) {
+			return false;
+		}
+
+		T cachedRow = getRowAt(id, Long.MAX_VALUE);
+
+		if (data == null) {
+			if (cachedRow == null) {
+				return false;
+			}
+
+			removeRow(id);
+			return true;
+		}
+
+		try {
+			T row = decodeRow(data.duplicate());
+
+			if (cachedRow != null) {
+				data.rewind();
+
+				if (ByteBuffer.wrap(JsonCodec.write(cachedRow)).equals(data)) {
+					return false;
+				}
+			}
+
+			putRow(id, row);
+			idSequence.ensureAtLeast(id);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	public long getCacheHitCount() {
+		return cacheHitCount.get();
+	}
+
+	public long getCacheMissCount() {
+		return cacheMissCount.get();
+	}
+
+	public int getCachedRowCount() {
+		return rowCache.size();
+	}
+}
+
+// ChangeTracker
+// 마지막 백업 이후 바뀐 행 id 들. db/<table>/backup-changes.txt 에 남겨서 다음 실행에 이어간다.
+// 파일 첫 줄은 실행 중이면 open, 정상 종료하면 closed. 시작할 때 open 이면 지난 실행이 비정상 종료되어
+// 바뀐 행을 모두 알 수 없으므로 다음 백업은 전체 백업으로 한다.
+class ChangeTracker {
+	private String filePath;
+	private Set<Integer> changedIds;
+	private volatile boolean fullBackupNeeded;
+
+	ChangeTracker(String filePath) {
+		this.filePath = filePath;
+		this.changedIds = ConcurrentHashMap.newKeySet();
+
+		if (Util.isFileExists(filePath) == false) {
+			// 추적을 시작하기 전의 변경은 알 수 없다.
+			fullBackupNeeded = true;
+		} else {
+			String[] lines = Util.getFileContents(filePath).split("\n");
+			fullBackupNeeded = lines[0].trim().equals("closed") == false;
+
+			for (int i = 1; i < lines.length; i++) {
+				if (lines[i].trim().length() > 0) {
+					changedIds.add(Integer.parseInt(lines[i].trim()));
+				}
+			}
+		}
+
+		save("open");
+	}
+
+	public void add(int id) {
+		changedIds.add(id);
+	}
+
+	public boolean isFullBackupNeeded() {
+		return fullBackupNeeded;
+	}
+
+	// 지금까지 바뀐 id 를 가져가고 새로 모은다.(백업 시작 시, 테이블 잠금 안에서)
+	public Set<Integer> take() {
+		Set<Integer> takenIds = changedIds;
+		changedIds = ConcurrentHashMap.newKeySet();
+		return takenIds;
+	}
+
+	// 백업에 실패하면 가져간 id 를 되돌린다.
+	public void putBack(Set<Integer> ids) {
+		changedIds.addAll(ids);
+	}
+
+	public void backupDone() {
+		fullBackupNeeded = false;
+		save("open");
+	}
+
+	public void close() {
+		save("closed");
+	}
+
+	private synchronized void save(String state) {
+		StringBuilder contents = new StringBuilder(state);
+
+		if (fullBackupNeeded == false) {
+			for (int id : changedIds) {
+				contents.append('\n').append(id);
+			}
+		}
+
+		Util.writeFileContents(filePath, contents.toString());
+	}
+}
+
+// TableBackup
+// 테이블 하나의 백업 파일들 : backup/<table>/backup-000001-full.gz, backup-000002-incr.gz ...
+// 전체 백업 다음에 이어지는 증분 백업들을 차례로 적용하면 그 시점의 테이블이 된다.
+// gzip 안의 레코드 : 종류(1) + id(4) + 길이(4) + 데이터, 끝까지 쓴 파일만 이름을 바꿔서 남긴다.
+class TableBackup implements Closeable {
+	static final byte RECORD_END = 0;
+	static final byte RECORD_PUT = 1;
+	static final byte RECORD_DELETE = 2;
+	private static final Pattern FILE_NAME_PATTERN = Pattern.compile("backup-(\\d+)-(full|incr)\\.gz");
+
+	private File file;
+	private File tempFile;
+	private DataOutputStream out;
+	private int recordCount;
+
+	// 새 백업 파일 쓰기 시작
+	TableBackup(String dirPath, boolean full) throws IOException {
+		Files.createDirectories(Paths.get(dirPath));
+
+		int backupNo = getLastBackupNo(dirPath) + 1;
+		this.file = new File(dirPath, String.format("backup-%06d-%s.gz", backupNo, full ? "full" : "incr"));
+		this.tempFile = new File(dirPath, file.getName() + ".tmp");
+		this.out = new DataOutputStream(
+				new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tempFile), 64 * 1024)));
+	}
+
+	public void put(int id, byte[] data) throws IOException {
+		out.writeByte(RECORD_PUT);
+		out.writeInt(id);
+		out.writeInt(data.length);
+		out.write(data);
+		recordCount++;
+	}
+
+	public void delete(int id) throws IOException {
+		out.writeByte(RECORD_DELETE);
+		out.writeInt(id);
+		out.writeInt(0);
+		recordCount++;
+	}
+
+	// 끝 표시를 쓰고 파일 이름을 바꿔서 백업을 완성한다.
+	public String commit() throws IOException {
+		out.writeByte(RECORD_END);
+		out.close();
+		out = null;
+
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+		return file.getName() + " (" + recordCount + "행, " + file.length() / 1024 + " KB)";
+	}
+
+	// 완성하지 못한 백업은 지운다.
+	@Override
+	public void close() {
+		if (out == null) {
+			return;
+		}
+
+		try {
+			out.close();
+		} catch (IOException e) {
+		}
+
+		tempFile.delete();
+	}
+
+	static int getLastBackupNo(String dirPath) {
+		int lastBackupNo = 0;
+
+		for (File backupFile : getBackupFiles(dirPath)) {
+			lastBackupNo = Math.max(lastBackupNo, getBackupNo(backupFile));
+		}
+
+		return lastBackupNo;
+	}
+
+	static boolean hasFullBackup(String dirPath) {
+		for (File backupFile : getBackupFiles(dirPath)) {
+			if (backupFile.getName().endsWith("-full.gz")) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	// 완성된 백업 파일(번호 순)
+	static List<File> getBackupFiles(String dirPath) {
+		List<File> backupFiles = new ArrayList<>();
+		File[] files = new File(dirPath).listFiles();
+
+		if (files == null) {
+			return backupFiles;
+		}
+
+		for (File backupFile : files) {
+			if (FILE_NAME_PATTERN.matcher(backupFile.getName()).matches()) {
+				backupFiles.add(backupFile);
+			}
+		}
+
+		backupFiles.sort((a, b) -> getBackupNo(a) - getBackupNo(b));
+
+		return backupFiles;
+	}
+
+	private static int getBackupNo(File backupFile) {
+		Matcher matcher = FILE_NAME_PATTERN.matcher(backupFile.getName());
+		matcher.matches();
+		return Integer.parseInt(matcher.group(1));
+	}
+
+	// backupNo 번 백업 시점의 행들 : 그 이전의 마지막 전체 백업부터 backupNo 까지 차례로 적용한다.
+	static TreeMap<Integer, byte[]> readRows(String dirPath, int backupNo) throws IOException {
+		List<File> chain = new ArrayList<>();
+
+		for (File backupFile : getBackupFiles(dirPath)) {
+			if (getBackupNo(backupFile) > backupNo) {
+				break;
+			}
+
+			if (backupFile.getName().endsWith("-full.gz")) {
+				chain.clear();
+			}
+
+			chain.add(backupFile);
+		}
+
+		if (chain.isEmpty() || chain.get(0).getName().endsWith("-full.gz") == false) {
+			throw new FileNotFoundException(dirPath + " 에 " + backupNo + "번까지의 전체 백업이 없습니다.");
+		}
+
+		TreeMap<Integer, byte[]> rows = new TreeMap<>();
+
+		for (File backupFile : chain) {
+			readRecords(backupFile, rows);
+		}
+
+		return rows;
+	}
+
+	private static void readRecords(File backupFile, Map<Integer, byte[]> rows) throws IOException {
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new GZIPInputStream(new FileInputStream(backupFile), 64 * 1024)))) {
+			while (true) {
+				byte type = in.readByte();
+
+				if (type == RECORD_END) {
+					return;
+				}
+
+				int id = in.readInt();
+				byte[] data = new byte[in.readInt()];
+				in.readFully(data);
+
+				if (type == RECORD_PUT) {
+					rows.put(id, data);
+				} else {
+					rows.remove(id);
+				}
+			}
+		}
+	}
+}
+
+// IdSequence
+// 테이블의 번호 발급기. 번호는 메모리에서 발급하고 lastId.txt 에는 1000개씩 미리 예약한 끝 번호를 남긴다.
+// 예약 범위 안에서는 파일을 건드리지 않으며, 비정상 종료 후에는 예약 끝 다음 번호부터 발급한다.
+// (쓰지 않은 번호는 건너뛰지만 같은 번호를 두번 주지는 않는다)
+class IdSequence {
+	private static final int RESERVE_SIZE = 1000;
+
+	private String filePath;
+	// 마지막으로 발급한 번호
+	private AtomicInteger lastId;
+	// lastId.txt 에 기록된 예약 끝 번호
+	private volatile int reservedId;
+
+	IdSequence(String filePath) {
+		this.filePath = filePath;
+
+		int savedId = 0;
+
+		// 읽지 못한 채로 0 부터 발급하면 이미 있는 행과 번호가 겹치므로 테이블을 열지 않는다.
+		if (Util.isFileExists(filePath)) {
+			try {
+				savedId = Integer.parseInt(new String(Files.readAllBytes(Paths.get(filePath)), StandardCharsets.UTF_8)
+						.trim());
+			} catch (IOException e) {
+				throw new UncheckedIOException(filePath + " 을 읽을 수 없습니다.", e);
+			} catch (NumberFormatException e) {
+				throw new IllegalStateException(filePath + " 의 번호를 알 수 없습니다.", e);
+			}
+		}
+
+		this.lastId = new AtomicInteger(savedId);
+		this.reservedId = savedId;
+	}
+
+	public int next() {
+		int id = lastId.incrementAndGet();
+
+		if (id > reservedId) {
+			reserve(id);
+		}
+
+		return id;
+	}
+
+	// 이어지는 번호 count 개를 한번에 발급하고 첫 번호를 돌려준다.(예약은 많아야 한번)
+	public int nextBlock(int count) {
+		int id = lastId.addAndGet(count);
+
+		if (id > reservedId) {
+			reserve(id);
+		}
+
+		return id - count + 1;
+	}
+
+	// 밖에서 정해진 번호(복구, 번호를 지정한 저장)보다 작은 번호는 발급하지 않는다.
+	public void ensureAtLeast(int id) {
+		lastId.accumulateAndGet(id, Math::max);
+
+		if (id > reservedId) {
+			reserve(id);
+		}
+	}
+
+	public int getLastId() {
+		return lastId.get();
+	}
+
+	// 예약 끝 번호를 디스크에 남긴 뒤에야 그 범위의 번호를 내준다.
+	// 남기지 못하면 예약을 그대로 두고 UncheckedIOException(번호를 받으려던 쓰기가 실패한다, 다음 발급에서 다시 예약한다)
+	private synchronized void reserve(int id) {
+		if (id <= reservedId) {
+			return;
+		}
+
+		int newReservedId = id + RESERVE_SIZE - 1;
+
+		try {
+			write(newReservedId);
+		} catch (IOException e) {
+			throw new UncheckedIOException(filePath + " 에 번호를 예약하지 못했습니다.", e);
+		}
+
+		reservedId = newReservedId;
+	}
+
+	// 임시 파일에 쓰고 fsync 한 뒤 바꿔치기(쓰다가 끊겨도 이전 값이 남는다)
+	private void write(int id) throws IOException {
+		Path tempPath = Paths.get(filePath + ".tmp");
+
+		try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			channel.write(ByteBuffer.wrap(String.valueOf(id).getBytes(StandardCharsets.UTF_8)));
+			channel.force(false);
+		}
+
+		Files.move(tempPath, Paths.get(filePath), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// 정상 종료 시에는 실제로 발급한 번호까지만 남겨서 예약한 번호를 버리지 않는다.
+	// 남기지 못해도 파일에는 발급한 번호보다 크거나 같은 예약 끝 번호가 그대로 있으므로 번호가 겹치지 않는다.
+	public synchronized void close() {
+		int id = lastId.get();
+
+		if (id != reservedId) {
+			try {
+				write(id);
+				reservedId = id;
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
+
+// WriteAheadLog
+// 테이블 저장/수정/삭제를 db/wal.log 에 먼저 이어쓰고, 모인 만큼 한번에 fsync(그룹 커밋) 한 뒤
+// 반영 스레드가 테이블 저장소에 반영한다. 시작할 때 로그에 남은 변경을 다시 반영(복구)한다.
+// 쓰기는 자기 기록이 들어간 묶음이 fsync 될 때까지 기다린다.(앞 묶음을 fsync 하는 동안 들어온 기록이 다음 묶음이 된다)
+// 로그에 쓰지 못하면 그 뒤로는 모든 쓰기가 IOException 으로 실패한다.(기다리던 쓰기도 성공으로 알리지 않는다)
+// -Dssg.wal.async=true : fsync 를 기다리지 않고 돌아온다. 빠르지만 갑자기 꺼지면 마지막 기록을 잃을 수 있다.(시험용)
+// -Dssg.wal.maxDelay : async 일 때 기록이 fsync 되기까지 모으는 최대 시간(ms, 기본 10)
+// 레코드 : 종류(1) + 테이블 이름 길이(1) + 테이블 이름 + id(4) + 길이(4) + crc32(4) + 데이터
+class WriteAheadLog {
+	static final byte RECORD_PUT = 1;
+	static final byte RECORD_DELETE = 2;
+	private static final int MAX_BATCH_SIZE = 4096;
+	// 로그가 이만큼 커지면 저장소를 fsync 하고 로그를 비운다.
+	private static final long CHECKPOINT_SIZE = 16L * 1024 * 1024;
+	// 쓰기 스레드를 끝내라는 표시(채널이 닫히지 않도록 인터럽트 대신 사용)
+	private static final Record CLOSE_RECORD = new Record(null, (byte) 0, 0, null);
+
+	private String filePath;
+	private Map<String, Table<?>> tables;
+	private FileChannel channel;
+	private long maxDelayNanos;
+	private boolean asyncCommit;
+	private LinkedBlockingQueue<Record> queue;
+	// 커밋이 끝나 저장소에 반영할 묶음들
+	private LinkedBlockingQueue<List<Record>> applyQueue;
+	// 로그에는 있지만 아직 저장소에 반영되지 않은 행(테이블:id -> 개수)
+	private Map<String, Integer> pendingCounts;
+	private long appendedSeq;
+	// 로그 파일에 쓰고 fsync 까지 끝난 순번(channel 잠금 안에서 바꾼다, 체크포인트가 이 값과 비교한다)
+	private long writtenSeq;
+	// 쓴 쪽에 커밋을 알린 순번
+	private long durableSeq;
+	private volatile long appliedSeq;
+	// 로그에 쓰지 못한 오류, 있으면 더 이상 쓰지 않는다.
+	private IOException failure;
+	private Thread writer;
+	private Thread applier;
+	private boolean closed;
+	private long commitCount;
+	private long recordCount;
+
+	static class Record {
+		String tableName;
+		byte type;
+		int id;
+		byte[] data;
+		long seq;
+
+		Record(String tableName, byte type, int id, byte[] data) {
+			this.tableName = tableName;
+			this.type = type;
+			this.id = id;
+			this.data = data;
+		}
+	}
+
+	WriteAheadLog(String dbDirPath, Map<String, Table<?>> tables) throws IOException {
+		this.filePath = dbDirPath + "/wal.log";
+		this.tables = tables;
+		this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(System.getProperty("ssg.wal.maxDelay", "10")));
+		this.asyncCommit = Boolean.parseBoolean(System.getProperty("ssg.wal.async", "false"));
+		this.queue = new LinkedBlockingQueue<>();
+		this.applyQueue = new LinkedBlockingQueue<>();
+		this.pendingCounts = new ConcurrentHashMap<>();
+		this.channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+
+		recover();
+
+		for (Table<?> table : tables.values()) {
+			table.setWriteAheadLog(this);
+		}
+
+		writer = new Thread(this::runWriter, "wal-writer");
+		writer.setDaemon(true);
+		writer.start();
+
+		applier = new Thread(this::runApplier, "wal-applier");
+		applier.setDaemon(true);
+		applier.start();
+
+		// exit 없이 끝나도 모아둔 기록은 남긴다.
+		Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+	}
+
+	// 지난 실행에서 로그에 남은 변경을 저장소에 다시 반영하고 로그를 비운다.
+	// 끝에 쓰다가 끊긴 레코드(길이/crc 불일치)는 커밋되지 않은 것이므로 버린다.
+	private void recover() throws IOException {
+		List<Record> records = new ArrayList<>();
+		long fileSize = channel.size();
+
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(filePath), 64 * 1024))) {
+			long offset = 0;
+
+			while (offset < fileSize) {
+				try {
+					byte type = in.readByte();
+					byte[] tableName = new byte[in.readUnsignedByte()];
+					in.readFully(tableName);
+					int id = in.readInt();
+					int length = in.readInt();
+					int crc = in.readInt();
+
+					if (length < 0 || offset + 14 + tableName.length + length > fileSize) {
+						break;
+					}
+
+					byte[] data = new byte[length];
+					in.readFully(data);
+
+					if (checksum(data) != crc) {
+						break;
+					}
+
+					records.add(new Record(new String(tableName, StandardCharsets.UTF_8), type, id, data));
+					offset += 14 + tableName.length + length;
+				} catch (EOFException e) {
+					break;
+				}
+			}
+		}
+
+		if (records.isEmpty() == false) {
+			System.out.println("쓰기 전 로그 복구 : " + records.size() + "건");
+			apply(records);
+			syncTables();
+		}
+
+		channel.truncate(0);
+		channel.position(0);
+		channel.force(false);
+	}
+
+	// 로그에 기록을 남기고 그 기록이 fsync 될 때까지 기다린다.(async 면 바로 돌아온다)
+	public void append(String tableName, byte type, int id, byte[] data) throws IOException {
+		Record record = new Record(tableName, type, id, data);
+
+		synchronized (this) {
+			checkWritable();
+			pendingCounts.merge(getPendingKey(tableName, id), 1, Integer::sum);
+			record.seq = ++appendedSeq;
+			queue.add(record);
+		}
+
+		if (asyncCommit == false) {
+			awaitDurable(record.seq);
+		}
+	}
+
+	// 여러 기록을 이어서 남기고 마지막 기록의 순번을 돌려준다.(fsync 는 awaitDurable 로 기다린다)
+	public long appendAll(String tableName, byte type, int[] ids, List<byte[]> datas) throws IOException {
+		List<Record> records = new ArrayList<>(ids.length);
+
+		for (int i = 0; i < ids.length; i++) {
+			records.add(new Record(tableName, type, ids[i], datas.get(i)));
+		}
+
+		synchronized (this) {
+			checkWritable();
+
+			for (Record record : records) {
+				pendingCounts.merge(getPendingKey(tableName, record.id), 1, Integer::sum);
+				record.seq = ++appendedSeq;
+			}
+
+			queue.addAll(records);
+			return appendedSeq;
+		}
+	}
+
+	private void checkWritable() throws IOException {
+		if (failure != null) {
+			throw new IOException("쓰기 전 로그에 쓸 수 없는 상태입니다.", failure);
+		}
+
+		if (closed) {
+			throw new IOException("쓰기 전 로그가 닫혔습니다.");
+		}
+	}
+
+	// 그 순번까지 fsync 되면 돌아온다. 로그에 쓰지 못했으면 IOException
+	synchronized void awaitDurable(long seq) throws IOException {
+		while (durableSeq < seq) {
+			if (failure != null) {
+				throw new IOException("쓰기 전 로그에 쓰지 못했습니다.", failure);
+			}
+
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("쓰기 전 로그 커밋을 기다리다 중단되었습니다.");
+			}
+		}
+	}
+
+	// 로그에만 있고 아직 저장소에 반영되지 않은 행인지
+	public boolean isPending(String tableName, int id) {
+		return pendingCounts.containsKey(getPendingKey(tableName, id));
+	}
+
+	private String getPendingKey(String tableName, int id) {
+		return tableName + ":" + id;
+	}
+
+	private void runWriter() {
+		List<Record> batch = new ArrayList<>();
+		boolean closing = false;
+
+		while (closing == false) {
+			try {
+				batch.add(queue.take());
+
+				// async 면 조금 기다리면서 들어온 기록을 함께 커밋한다.
+				// 아니면 쓰는 쪽이 커밋을 기다리므로 기다리지 않고, 앞 묶음을 fsync 하는 동안 쌓인 기록을 함께 커밋한다.
+				if (asyncCommit) {
+					long deadline = System.nanoTime() + maxDelayNanos;
+
+					while (batch.size() < MAX_BATCH_SIZE && batch.get(batch.size() - 1) != CLOSE_RECORD) {
+						Record record = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+						if (record == null) {
+							break;
+						}
+
+						batch.add(record);
+					}
+				}
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			queue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+
+			// 닫을 때 : 남은 기록까지 커밋하고 끝낸다.
+			if (batch.remove(CLOSE_RECORD)) {
+				queue.drainTo(batch);
+				closing = true;
+			}
+
+			commit(batch);
+			batch = new ArrayList<>();
+		}
+
+		applyQueue.add(Collections.emptyList());
+	}
+
+	// 커밋된 묶음을 저장소에 반영한다.(다음 커밋의 fsync 와 겹쳐서 진행된다)
+	private void runApplier() {
+		while (true) {
+			List<Record> batch;
+
+			try {
+				batch = applyQueue.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			// 쓰기 스레드가 끝났다는 표시
+			if (batch.isEmpty()) {
+				return;
+			}
+
+			try {
+				apply(batch);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+
+			for (Record record : batch) {
+				pendingCounts.computeIfPresent(getPendingKey(record.tableName, record.id),
+						(key, count) -> count == 1 ? null : count - 1);
+			}
+
+			appliedSeq = batch.get(batch.size() - 1).seq;
+
+			try {
+				if (channel.size() >= CHECKPOINT_SIZE) {
+					checkpoint();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void commit(List<Record> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+
+		try {
+			synchronized (this) {
+				if (failure != null) {
+					throw failure;
+				}
+			}
+
+			write(batch);
+		} catch (IOException e) {
+			// 커밋되지 않은 묶음 : 반영하지 않고 기다리는 쪽에는 실패를 알린다.
+			for (Record record : batch) {
+				pendingCounts.computeIfPresent(getPendingKey(record.tableName, record.id),
+						(key, count) -> count == 1 ? null : count - 1);
+			}
+
+			synchronized (this) {
+				if (failure == null) {
+					failure = e;
+					e.printStackTrace();
+				}
+
+				notifyAll();
+			}
+
+			return;
+		}
+
+		synchronized (this) {
+			durableSeq = batch.get(batch.size() - 1).seq;
+			commitCount++;
+			recordCount += batch.size();
+			notifyAll();
+		}
+
+		applyQueue.add(batch);
+	}
+
+	private void write(List<Record> batch) throws IOException {
+		int size = 0;
+
+		for (Record record : batch) {
+			size += 14 + record.tableName.getBytes(StandardCharsets.UTF_8).length + record.data.length;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+
+		for (Record record : batch) {
+			byte[] tableName = record.tableName.getBytes(StandardCharsets.UTF_8);
+			buffer.put(record.type);
+			buffer.put((byte) tableName.length);
+			buffer.put(tableName);
+			buffer.putInt(record.id);
+			buffer.putInt(record.data.length);
+			buffer.putInt(checksum(record.data));
+			buffer.put(record.data);
+		}
+
+		buffer.flip();
+
+		synchronized (channel) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+
+			channel.force(false);
+			writtenSeq = batch.get(batch.size() - 1).seq;
+		}
+	}
+
+	// 같은 행에 대한 여러 기록은 마지막 것만 저장소에 반영한다.
+	private void apply(List<Record> batch) throws IOException {
+		Map<String, Record> lastRecords = new LinkedHashMap<>();
+		Map<String, Integer> maxIds = new HashMap<>();
+
+		for (Record record : batch) {
+			lastRecords.put(getPendingKey(record.tableName, record.id), record);
+			maxIds.merge(record.tableName, record.id, Math::max);
+		}
+
+		for (Record record : lastRecords.values()) {
+			Table<?> table = tables.get(record.tableName);
+
+			if (table != null) {
+				table.applyLogRecord(record.type, record.id, record.data);
+			}
+		}
+
+		for (Map.Entry<String, Integer> entry : maxIds.entrySet()) {
+			Table<?> table = tables.get(entry.getKey());
+
+			if (table != null) {
+				table.ensureIdAtLeast(entry.getValue());
+			}
+		}
+	}
+
+	// 반영된 내용을 저장소에서 fsync 한 뒤에야 로그를 비울 수 있다.
+	// 로그에 썼지만 아직 반영되지 않은 기록이 있으면 다음 기회로 미룬다.
+	// (커밋을 알리기 전이라도 파일에 쓴 묶음은 같은 channel 잠금 안에서 writtenSeq 로 보인다)
+	private void checkpoint() throws IOException {
+		synchronized (channel) {
+			if (appliedSeq != writtenSeq) {
+				return;
+			}
+
+			syncTables();
+			channel.truncate(0);
+			channel.position(0);
+			channel.force(false);
+		}
+	}
+
+	private void syncTables() throws IOException {
+		for (Table<?> table : tables.values()) {
+			table.syncStorage();
+		}
+	}
+
+	private static int checksum(byte[] data) {
+		CRC32 crc32 = new CRC32();
+		crc32.update(data);
+		return (int) crc32.getValue();
+	}
+
+	// 남은 기록을 모두 커밋/반영하고 쓰기 스레드를 끝낸다.
+	public void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+
+			closed = true;
+		}
+
+		queue.add(CLOSE_RECORD);
+
+		try {
+			writer.join();
+			applier.join();
+			checkpoint();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		synchronized (this) {
+			notifyAll();
+		}
+	}
+
+	public synchronized String getStats() {
+		return String.format("쓰기 전 로그 | 커밋 %d회 | 기록 %d건 | 커밋당 평균 %.1f건", commitCount, recordCount,
+				commitCount == 0 ? 0.0 : (double) recordCount / commitCount);
+	}
+}
+
+// TableStorage
+// Table 의 행(json 바이트)을 실제로 저장하는 저장 엔진
+interface TableStorage {
+	// 없는 행이면 null
+	ByteBuffer readRow(int id) throws IOException;
+
+	void writeRow(int id, byte[] data) throws IOException;
+
+	void deleteRow(int id) throws IOException;
+
+	// 모든 행을 id 순으로 넘겨준다.
+	void scanRows(RowConsumer consumer) throws IOException;
+
+	// 지금까지 쓴 내용을 디스크에 확실히 남긴다.(fsync)
+	void sync() throws IOException;
+}
+
+interface RowConsumer {
+	void accept(int id, ByteBuffer data) throws IOException;
+}
+
+// 행 하나당 json 파일 하나 (db/<table>/<id>.json)
+class JsonFileStorage implements TableStorage {
+	private static final LongAdder filesOpened = Metrics.counter("storage.filesOpened");
+
+	private String tableDirPath;
+	// 마지막 sync 이후 쓴 행
+	private Set<Integer> unsyncedIds;
+
+	JsonFileStorage(String tableDirPath) {
+		this.tableDirPath = tableDirPath;
+		this.unsyncedIds = ConcurrentHashMap.newKeySet();
+	}
+
+	private Path getRowFilePath(int id) {
+		return Paths.get(tableDirPath, id + ".json");
+	}
+
+	@Override
+	public ByteBuffer readRow(int id) throws IOException {
+		filesOpened.increment();
+
+		try {
+			return ByteBuffer.wrap(Files.readAllBytes(getRowFilePath(id)));
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public void writeRow(int id, byte[] data) throws IOException {
+		filesOpened.increment();
+		Files.write(getRowFilePath(id), data);
+		unsyncedIds.add(id);
+	}
+
+	@Override
+	public void deleteRow(int id) throws IOException {
+		Files.deleteIfExists(getRowFilePath(id));
+		unsyncedIds.add(id);
+	}
+
+	@Override
+	public void sync() throws IOException {
+		for (Integer id : unsyncedIds) {
+			unsyncedIds.remove(id);
+			filesOpened.increment();
+
+			try (FileChannel channel = FileChannel.open(getRowFilePath(id), StandardOpenOption.WRITE)) {
+				channel.force(false);
+			} catch (NoSuchFileException e) {
+			}
+		}
+
+		// 파일 생성/삭제는 디렉토리를 fsync 해야 남는다.(지원하지 않는 OS 는 넘어간다)
+		try (FileChannel channel = FileChannel.open(Paths.get(tableDirPath), StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+		}
+	}
+
+	@Override
+	public void scanRows(RowConsumer consumer) throws IOException {
+		for (int id : getRowIds(tableDirPath)) {
+			ByteBuffer data = readRow(id);
+
+			if (data != null) {
+				consumer.accept(id, data);
+			}
+		}
+	}
+
+	// 디렉토리 안의 <id>.json 파일들의 id(오름차순)
+	static List<Integer> getRowIds(String tableDirPath) {
+		List<Integer> ids = new ArrayList<>();
+		String[] fileNames = new File(tableDirPath).list();
+
+		if (fileNames == null) {
+			return ids;
+		}
+
+		for (String fileName : fileNames) {
+			if (fileName.endsWith(".json") == false) {
+				continue;
+			}
+
+			try {
+				ids.add(Integer.parseInt(fileName.substring(0, fileName.length() - 5)));
+			} catch (NumberFormatException e) {
+			}
+		}
+
+		Collections.sort(ids);
+
+		return ids;
+	}
+}
+
+// Metrics
+// 명령어/테이블/빌드의 횟수와 소요 시간. 값 하나 올리는 데 LongAdder 나 AtomicLongArray 덧셈 한두번이라 항상 켜둔다.
+// system stats 로 보고, -Dssg.metrics.dumpInterval 초(기본값 60, 0 이면 끔)마다 -Dssg.metrics.file(기본값 metrics.json)에 쓴다.
+class Metrics {
+	// 명령어 이름처럼 입력에서 오는 이름이 한없이 늘지 않게 막는다.
+	private static final int MAX_METRIC_COUNT = 512;
+	private static final String OVERFLOW_NAME = "etc";
+
+	private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+	private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+	private static ScheduledExecutorService dumpExecutor;
+
+	public static LongAdder counter(String name) {
+		LongAdder counter = counters.get(name);
+
+		if (counter != null) {
+			return counter;
+		}
+
+		return counters.computeIfAbsent(counters.size() < MAX_METRIC_COUNT ? name : OVERFLOW_NAME,
+				key -> new LongAdder());
+	}
+
+	public static LatencyHistogram histogram(String name) {
+		LatencyHistogram histogram = histograms.get(name);
+
+		if (histogram != null) {
+			return histogram;
+		}
+
+		return histograms.computeIfAbsent(histograms.size() < MAX_METRIC_COUNT ? name : OVERFLOW_NAME,
+				key -> new LatencyHistogram());
+	}
+
+	public static void count(String name, long delta) {
+		counter(name).add(delta);
+	}
+
+	public static void recordNanos(String name, long nanos) {
+		histogram(name).record(nanos);
+	}
+
+	// system stats 출력 줄
+	public static List<String> getStatLines() {
+		List<String> lines = new ArrayList<>();
+
+		for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+			lines.add(String.format("%s | %,d", entry.getKey(), entry.getValue().sum()));
+		}
+
+		lines.add("이름 | 횟수 | 평균 | p50 | p90 | p99 | 최대 (ms)");
+
+		for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+			lines.add(String.format("%s | %,d | %.3f | %.3f | %.3f | %.3f | %.3f", entry.getKey(),
+					histogram.getCount(), toMillis(histogram.getMean()), toMillis(histogram.getPercentile(0.5)),
+					toMillis(histogram.getPercentile(0.9)), toMillis(histogram.getPercentile(0.99)),
+					toMillis(histogram.getMax())));
+		}
+
+		return lines;
+	}
+
+	private static double toMillis(double nanos) {
+		return nanos / 1_000_000;
+	}
+
+	public static Map<String, Object> toMap() {
+		Map<String, Object> counterValues = new LinkedHashMap<>();
+
+		for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+			counterValues.put(entry.getKey(), entry.getValue().sum());
+		}
+
+		Map<String, Object> histogramValues = new LinkedHashMap<>();
+
+		for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+			Map<String, Object> values = new LinkedHashMap<>();
+			values.put("count", histogram.getCount());
+			values.put("meanMs", toMillis(histogram.getMean()));
+			values.put("p50Ms", toMillis(histogram.getPercentile(0.5)));
+			values.put("p90Ms", toMillis(histogram.getPercentile(0.9)));
+			values.put("p99Ms", toMillis(histogram.getPercentile(0.99)));
+			values.put("maxMs", toMillis(histogram.getMax()));
+			histogramValues.put(entry.getKey(), values);
+		}
+
+		Map<String, Object> metrics = new LinkedHashMap<>();
+		metrics.put("time", Util.getNowDateStr());
+		metrics.put("counters", counterValues);
+		metrics.put("histograms", histogramValues);
+
+		return metrics;
+	}
+
+	public static synchronized void startDump() {
+		long interval = Long.getLong("ssg.metrics.dumpInterval", 60);
+
+		if (interval <= 0 || dumpExecutor != null) {
+			return;
+		}
+
+		dumpExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "metrics-dump");
+			thread.setDaemon(true);
+			return thread;
+		});
+		dumpExecutor.scheduleWithFixedDelay(Metrics::dump, interval, interval, TimeUnit.SECONDS);
+	}
+
+	// 종료할 때 마지막으로 한번 더 쓴다.
+	public static synchronized void stopDump() {
+		if (dumpExecutor == null) {
+			return;
+		}
+
+		dumpExecutor.shutdown();
+		dumpExecutor = null;
+		dump();
+	}
+
+	// 임시 파일에 쓰고 바꿔치기(읽는 쪽이 반쯤 쓴 파일을 보지 않게)
+	public static void dump() {
+		Path filePath = Paths.get(System.getProperty("ssg.metrics.file", "metrics.json"));
+		Path tempPath = Paths.get(filePath + ".tmp");
+
+		try {
+			Files.write(tempPath, JsonCodec.write(toMap()));
+			Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
+
+// LatencyHistogram
+// 소요 시간(ns) 분포. 2의 거듭제곱 구간을 다시 4칸으로 나눈 칸에 세므로 백분위 값의 오차는 25% 이내이고,
+// 칸 수가 고정(256)이라 기록이 아무리 많아도 메모리가 늘지 않는다.
+class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	private AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKET_COUNT);
+	private LongAdder count = new LongAdder();
+	private LongAdder totalNanos = new LongAdder();
+	private AtomicLong maxNanos = new AtomicLong();
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+
+		buckets.incrementAndGet(getBucketIndex(nanos));
+		count.increment();
+		totalNanos.add(nanos);
+
+		long max = maxNanos.get();
+
+		while (nanos > max && maxNanos.compareAndSet(max, nanos) == false) {
+			max = maxNanos.get();
+		}
+	}
+
+	// 0 ~ 3 은 그대로, 그 위는 (최상위 비트 위치, 그 아래 두 비트)
+	static int getBucketIndex(long nanos) {
+		if (nanos < SUB_BUCKET_COUNT) {
+			return (int) nanos;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int subBucket = (int) ((nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1));
+
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	// 칸에 들어가는 가장 큰 값
+	static long getBucketUpperBound(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+
+		int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+		int subBucket = index % SUB_BUCKET_COUNT;
+		long lowerBound = (long) (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+
+		return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public double getMean() {
+		long currentCount = count.sum();
+		return currentCount == 0 ? 0 : (double) totalNanos.sum() / currentCount;
+	}
+
+	public long getMax() {
+		return maxNanos.get();
+	}
+
+	// percentile(0 ~ 1) 위치의 값(칸의 상한, 최대값을 넘지 않는다)
+	public long getPercentile(double percentile) {
+		long[] counts = new long[buckets.length()];
+		long total = 0;
+
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+
+		if (total == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(percentile * total));
+		long seen = 0;
+
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+
+			if (seen >= rank) {
+				return Math.min(getBucketUpperBound(i), getMax());
+			}
+		}
+
+		return getMax();
+	}
+}
+
+// MeteredTableStorage
+// 저장소를 감싸서 테이블 별로 읽은 행/바이트, 쓴 바이트, 지운 행을 센다.
+class MeteredTableStorage implements TableStorage {
+	private TableStorage storage;
+	private LongAdder rowsRead;
+	private LongAdder bytesRead;
+	private LongAdder rowsWritten;
+	private LongAdder bytesWritten;
+	private LongAdder rowsDeleted;
+	private LatencyHistogram syncTime;
+
+	MeteredTableStorage(String tableName, TableStorage storage) {
+		this.storage = storage;
+		String prefix = "table." + tableName + ".";
+		this.rowsRead = Metrics.counter(prefix + "rowsRead");
+		this.bytesRead = Metrics.counter(prefix + "bytesRead");
+		this.rowsWritten = Metrics.counter(prefix + "rowsWritten");
+		this.bytesWritten = Metrics.counter(prefix + "bytesWritten");
+		this.rowsDeleted = Metrics.counter(prefix + "rowsDeleted");
+		this.syncTime = Metrics.histogram(prefix + "sync");
+	}
+
+	@Override
+	public ByteBuffer readRow(int id) throws IOException {
+		ByteBuffer data = storage.readRow(id);
+
+		if (data != null) {
+			rowsRead.increment();
+			bytesRead.add(data.remaining());
+		}
+
+		return data;
+	}
+
+	@Override
+	public void writeRow(int id, byte[] data) throws IOException {
+		storage.writeRow(id, data);
+		rowsWritten.increment();
+		bytesWritten.add(data.length);
+	}
+
+	@Override
+	public void deleteRow(int id) throws IOException {
+		storage.deleteRow(id);
+		rowsDeleted.increment();
+	}
+
+	@Override
+	public void scanRows(RowConsumer consumer) throws IOException {
+		storage.scanRows((id, data) -> {
+			rowsRead.increment();
+			bytesRead.add(data.remaining());
+			consumer.accept(id, data);
+		});
+	}
+
+	@Override
+	public void sync() throws IOException {
+		long startTime = System.nanoTime();
+		storage.sync();
+		syncTime.record(System.nanoTime() - startTime);
+	}
+}
+
+// 세그먼트 로그 저장 엔진 (db/<table>/log/segment-000001.log ...)
+// 모든 변경(저장/삭제)을 현재 세그먼트 끝에 이어쓰고, 메모리의 id -> (세그먼트, 위치) 인덱스로 찾는다.
+// 수정/삭제로 생긴 쓰레기가 많은 세그먼트는 백그라운드에서 살아있는 행만 옮기고 지운다.
+// 레코드 : 종류(1) + id(4) + 길이(4) + crc32(4) + 데이터
+class SegmentLogStorage implements TableStorage {
+	private static final byte RECORD_PUT = 1;
+	private static final byte RECORD_DELETE = 2;
+	private static final int HEADER_SIZE = 13;
+	private static final long SEGMENT_MAX_SIZE = 16L * 1024 * 1024;
+	private static final long COMPACT_MIN_GARBAGE_SIZE = 1024 * 1024;
+	// json 파일을 옮기는 동안만 있는 표시 파일
+	private static final String MIGRATING_FILE_NAME = "migrating";
+	private static final LongAdder filesOpened = Metrics.counter("storage.filesOpened");
+	private static final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "segment-compactor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private String tableDirPath;
+	private String logDirPath;
+	private TreeMap<Integer, Segment> segments;
+	private TreeMap<Integer, RowLocation> rowLocations;
+	private Segment activeSegment;
+	private boolean compacting;
+	// 전체 읽기 시 세그먼트를 메모리 매핑해서 읽을지(-Dssg.scan=read 로 끌 수 있다)
+	private boolean mappedScan;
+
+	static class Segment {
+		int segmentNo;
+		File file;
+		FileChannel channel;
+		long size;
+		long garbageSize;
+	}
+
+	static class RowLocation {
+		int segmentNo;
+		long offset;
+		int length;
+
+		RowLocation(int segmentNo, long offset, int length) {
+			this.segmentNo = segmentNo;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	SegmentLogStorage(String tableDirPath) throws IOException {
+		this.tableDirPath = tableDirPath;
+		this.logDirPath = tableDirPath + "/log";
+		this.segments = new TreeMap<>();
+		this.rowLocations = new TreeMap<>();
+		this.mappedScan = System.getProperty("ssg.scan", "mmap").equals("mmap");
+
+		Util.makeDir(logDirPath);
+
+		File migratingFile = new File(logDirPath, MIGRATING_FILE_NAME);
+
+		// 옮기다 끊긴 세그먼트는 일부 행만 있으므로 버리고 json 파일에서 다시 옮긴다.
+		if (migratingFile.exists()) {
+			deleteSegmentFiles();
+		}
+
+		openSegments();
+
+		if (segments.isEmpty()) {
+			migrateJsonFiles(migratingFile);
+		} else {
+			activeSegment = segments.lastEntry().getValue();
+		}
+	}
+
+	private void openSegments() throws IOException {
+		String[] fileNames = new File(logDirPath).list();
+
+		for (String fileName : fileNames) {
+			if (fileName.startsWith("segment-") && fileName.endsWith(".log")) {
+				int segmentNo = Integer.parseInt(fileName.substring(8, fileName.length() - 4));
+				Segment segment = new Segment();
+				segment.segmentNo = segmentNo;
+				segment.file = new File(logDirPath, fileName);
+				segments.put(segmentNo, segment);
+			}
+		}
+
+		// 번호 순으로 다시 읽어서 인덱스를 만든다.(뒤의 기록이 앞의 기록을 덮는다)
+		for (Segment segment : segments.values()) {
+			filesOpened.increment();
+			segment.channel = FileChannel.open(segment.file.toPath(), StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			replaySegment(segment);
+		}
+	}
+
+	private void replaySegment(Segment segment) throws IOException {
+		long fileSize = segment.channel.size();
+		long offset = 0;
+		filesOpened.increment();
+
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(segment.file), 64 * 1024))) {
+			while (offset + HEADER_SIZE <= fileSize) {
+				byte type = in.readByte();
+				int id = in.readInt();
+				int length = in.readInt();
+				int crc = in.readInt();
+
+				if (length < 0 || offset + HEADER_SIZE + length > fileSize) {
+					break;
+				}
+
+				byte[] data = new byte[length];
+				in.readFully(data);
+
+				if (checksum(data) != crc) {
+					break;
+				}
+
+				applyRecord(segment, type, id, offset, length);
+				offset += HEADER_SIZE + length;
+			}
+		}
+
+		// 쓰다가 끊긴 마지막 레코드는 잘라낸다.
+		if (offset < fileSize) {
+			segment.channel.truncate(offset);
+		}
+
+		segment.size = offset;
+	}
+
+	private void applyRecord(Segment segment, byte type, int id, long offset, int length) {
+		markGarbage(rowLocations.remove(id));
+
+		if (type == RECORD_PUT) {
+			rowLocations.put(id, new RowLocation(segment.segmentNo, offset, length));
+		} else {
+			segment.garbageSize += HEADER_SIZE;
+		}
+	}
+
+	private void markGarbage(RowLocation oldLocation) {
+		if (oldLocation == null) {
+			return;
+		}
+
+		Segment oldSegment = segments.get(oldLocation.segmentNo);
+
+		if (oldSegment != null) {
+			oldSegment.garbageSize += HEADER_SIZE + oldLocation.length;
+		}
+	}
+
+	// 기존 json 파일 방식의 테이블을 처음 열 때 로그로 옮긴다.(json 파일은 그대로 둔다)
+	// 세그먼트가 있으면 다음에 열 때 json 파일을 보지 않으므로, 옮기는 중 표시를 먼저 디스크에 남기고
+	// 옮긴 행을 모두 디스크에 내린 뒤에 지운다. 표시가 남아 있으면 다음에 열 때 처음부터 다시 옮긴다.
+	private void migrateJsonFiles(File migratingFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(migratingFile.toPath(), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE)) {
+			channel.force(true);
+		}
+
+		activeSegment = createSegment(1);
+
+		for (int id : JsonFileStorage.getRowIds(tableDirPath)) {
+			filesOpened.increment();
+			byte[] data = Files.readAllBytes(Paths.get(tableDirPath, id + ".json"));
+			rowLocations.put(id, append(RECORD_PUT, id, data));
+		}
+
+		forceSegmentsFrom(1);
+		Files.delete(migratingFile.toPath());
+	}
+
+	private void deleteSegmentFiles() throws IOException {
+		for (String fileName : new File(logDirPath).list()) {
+			if (fileName.startsWith("segment-") && fileName.endsWith(".log")) {
+				Files.delete(Paths.get(logDirPath, fileName));
+			}
+		}
+	}
+
+	private void forceSegmentsFrom(int segmentNo) throws IOException {
+		for (Segment segment : segments.tailMap(segmentNo, true).values()) {
+			segment.channel.force(false);
+		}
+	}
+
+	private Segment createSegment(int segmentNo) throws IOException {
+		Segment segment = new Segment();
+		segment.segmentNo = segmentNo;
+		segment.file = new File(logDirPath, String.format("segment-%06d.log", segmentNo));
+		filesOpened.increment();
+		segment.channel = FileChannel.open(segment.file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE);
+		segments.put(segmentNo, segment);
+
+		return segment;
+	}
+
+	private RowLocation append(byte type, int id, byte[] data) throws IOException {
+		if (activeSegment.size >= SEGMENT_MAX_SIZE) {
+			activeSegment = createSegment(activeSegment.segmentNo + 1);
+		}
+
+		ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + data.length);
+		record.put(type);
+		record.putInt(id);
+		record.putInt(data.length);
+		record.putInt(checksum(data));
+		record.put(data);
+		record.flip();
+
+		long offset = activeSegment.size;
+		long position = offset;
+
+		while (record.hasRemaining()) {
+			position += activeSegment.channel.write(record, position);
+		}
+
+		activeSegment.size = position;
+
+		return new RowLocation(activeSegment.segmentNo, offset, data.length);
+	}
+
+	private static int checksum(byte[] data) {
+		CRC32 crc32 = new CRC32();
+		crc32.update(data);
+		return (int) crc32.getValue();
+	}
+
+	private ByteBuffer readData(RowLocation location) throws IOException {
+		FileChannel channel = segments.get(location.segmentNo).channel;
+		ByteBuffer data = ByteBuffer.allocate(location.length);
+		long position = location.offset + HEADER_SIZE;
+
+		while (data.hasRemaining()) {
+			int readSize = channel.read(data, position);
+
+			if (readSize < 0) {
+				throw new EOFException(location.segmentNo + "번 세그먼트가 잘렸습니다.");
+			}
+
+			position += readSize;
+		}
+
+		data.flip();
+
+		return data;
+	}
+
+	@Override
+	public synchronized ByteBuffer readRow(int id) throws IOException {
+		RowLocation location = rowLocations.get(id);
+
+		if (location == null) {
+			return null;
+		}
+
+		return readData(location);
+	}
+
+	@Override
+	public synchronized void writeRow(int id, byte[] data) throws IOException {
+		markGarbage(rowLocations.put(id, append(RECORD_PUT, id, data)));
+		requestCompaction();
+	}
+
+	@Override
+	public synchronized void deleteRow(int id) throws IOException {
+		RowLocation oldLocation = rowLocations.remove(id);
+
+		if (oldLocation == null) {
+			return;
+		}
+
+		markGarbage(oldLocation);
+		append(RECORD_DELETE, id, new byte[0]);
+		activeSegment.garbageSize += HEADER_SIZE;
+		requestCompaction();
+	}
+
+	@Override
+	public synchronized void sync() throws IOException {
+		for (Segment segment : segments.values()) {
+			segment.channel.force(false);
+		}
+	}
+
+	@Override
+	public synchronized void scanRows(RowConsumer consumer) throws IOException {
+		if (mappedScan) {
+			scanMappedRows(consumer);
+			return;
+		}
+
+		for (Map.Entry<Integer, RowLocation> entry : rowLocations.entrySet()) {
+			consumer.accept(entry.getKey(), readData(entry.getValue()));
+		}
+	}
+
+	// 세그먼트를 통째로 매핑하고 행 데이터는 매핑된 버퍼의 조각으로 바로 넘긴다.(행마다 read 호출/복사 없음)
+	private void scanMappedRows(RowConsumer consumer) throws IOException {
+		Map<Integer, MappedByteBuffer> mappedSegments = new HashMap<>();
+
+		for (Segment segment : segments.values()) {
+			mappedSegments.put(segment.segmentNo, segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, segment.size));
+		}
+
+		for (Map.Entry<Integer, RowLocation> entry : rowLocations.entrySet()) {
+			RowLocation location = entry.getValue();
+			ByteBuffer data = mappedSegments.get(location.segmentNo).duplicate();
+			int position = (int) location.offset + HEADER_SIZE;
+
+			data.limit(position + location.length);
+			data.position(position);
+
+			consumer.accept(entry.getKey(), data.slice());
+		}
+	}
+
+	public void setMappedScan(boolean mappedScan) {
+		this.mappedScan = mappedScan;
+	}
+
+	// 닫힌 세그먼트의 쓰레기가 충분히 쌓였으면 백그라운드 압축을 건다.
+	private void requestCompaction() {
+		if (compacting) {
+			return;
+		}
+
+		long garbageSize = 0;
+
+		for (Segment segment : segments.values()) {
+			if (segment != activeSegment) {
+				garbageSize += segment.garbageSize;
+			}
+		}
+
+		if (garbageSize < COMPACT_MIN_GARBAGE_SIZE) {
+			return;
+		}
+
+		compacting = true;
+		compactor.submit(() -> {
+			try {
+				compact();
+			} catch (IOException e) {
+				e.printStackTrace();
+			} finally {
+				synchronized (this) {
+					compacting = false;
+				}
+			}
+		});
+	}
+
+	// 절반 이상이 쓰레기인 닫힌 세그먼트를 하나씩 정리한다.(세그먼트 단위로만 잠근다)
+	public void compact() throws IOException {
+		List<Integer> segmentNos;
+
+		synchronized (this) {
+			segmentNos = new ArrayList<>(segments.keySet());
+		}
+
+		for (int segmentNo : segmentNos) {
+			synchronized (this) {
+				Segment segment = segments.get(segmentNo);
+
+				if (segment == null || segment == activeSegment || segment.garbageSize * 2 < segment.size) {
+					continue;
+				}
+
+				compactSegment(segment);
+			}
+		}
+	}
+
+	// 살아있는 행은 현재 세그먼트로 옮기고 세그먼트 파일을 지운다.
+	// 더 오래된 세그먼트에 지워진 행이 남아있을 수 있으므로, 가장 오래된 세그먼트가 아니면 삭제 기록도 옮긴다.
+	private void compactSegment(Segment segment) throws IOException {
+		boolean oldestSegment = segments.firstKey() == segment.segmentNo;
+		int firstTargetSegmentNo = activeSegment.segmentNo;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		long offset = 0;
+
+		while (offset < segment.size) {
+			header.clear();
+			segment.channel.read(header, offset);
+			header.flip();
+
+			byte type = header.get();
+			int id = header.getInt();
+			int length = header.getInt();
+			RowLocation location = rowLocations.get(id);
+
+			if (type == RECORD_PUT) {
+				if (location != null && location.segmentNo == segment.segmentNo && location.offset == offset) {
+					rowLocations.put(id, append(RECORD_PUT, id, readData(location).array()));
+				}
+			} else if (oldestSegment == false && location == null) {
+				append(RECORD_DELETE, id, new byte[0]);
+				activeSegment.garbageSize += HEADER_SIZE;
+			}
+
+			offset += HEADER_SIZE + length;
+		}
+
+		// 옮긴 행이 디스크에 내려간 뒤에만 원본 세그먼트를 지운다.(옮기다 세그먼트가 넘어갔을 수 있다)
+		forceSegmentsFrom(firstTargetSegmentNo);
+
+		segment.channel.close();
+		segment.file.delete();
+		segments.remove(segment.segmentNo);
+	}
+}
+
+// RowListener
+// 테이블 행이 바뀔 때 받는 알림(행 잠금 안에서 호출되므로 가볍게 처리해야 한다)
+// 새로 저장이면 oldRow 가 null, 삭제면 newRow 가 null
+interface RowListener<T> {
+	void onRowChanged(int id, T oldRow, T newRow);
+}
+
+// SearchIndex
+// 게시물 제목/내용의 역색인(단어 -> 게시물 -> 가중치). 한글은 띄어쓰기로 나누면 조사가 붙어 찾지 못하므로
+// 글자 두개씩(bigram) 잘라서 색인한다.(한 글자 단어는 그대로)
+// 게시물 테이블의 쓰기 알림으로 바로 갱신하고, 종료할 때 db/article/search-index 에 저장한다.
+// 처음 검색할 때 저장된 색인을 읽고 게시물 별 해시를 비교해서 바뀐 게시물만 다시 색인한다.
+class SearchIndex implements RowListener<Article> {
+	// 2 : 게시물 해시가 내용 해시(ContentHash)로 바뀌었다.(1 로 저장된 색인은 버리고 다시 만든다)
+	// 3 : 단어 글자가 [\p{L}\p{Nd}](코드 포인트 단위)로 바뀌었다.
+	private static final int FILE_VERSION = 3;
+	// 제목에 있는 단어는 내용보다 무겁게
+	private static final int TITLE_WEIGHT = 3;
+	private static final Pattern WORD_PATTERN = Pattern.compile("[\\p{L}\\p{Nd}]+");
+
+	private Table<Article> articleTable;
+	private String filePath;
+	private Map<Integer, Doc> docs;
+	private Map<String, Map<Integer, Integer>> postings;
+	private boolean loaded;
+	private boolean changed;
+	// 정적 검색 색인(SiteSearchIndex)이 다시 만들어야 하는 단어/게시물, takeChanges 를 처음 부른 뒤부터 모은다.
+	private Set<String> changedTerms;
+	private Set<Integer> changedIds;
+
+	// 색인된 게시물 하나 : 게시판, 해시, 단어와 가중치
+	static class Doc {
+		int boardId;
+		long hash;
+		String[] terms;
+		int[] weights;
+	}
+
+	SearchIndex(Table<Article> articleTable, String filePath) {
+		this.articleTable = articleTable;
+		this.filePath = filePath;
+		this.docs = new HashMap<>();
+		this.postings = new HashMap<>();
+	}
+
+	// 검색 : 검색어의 단어가 많이 맞는 순, 같으면 점수(드문 단어일수록, 많이 나올수록 높다) 순
+	// boardId 가 0 이면 모든 게시판
+	public List<Integer> search(String query, int boardId, int limit) {
+		ensureLoaded();
+
+		Set<String> queryTerms = new LinkedHashSet<>(tokenize(query));
+
+		synchronized (this) {
+			Map<Integer, double[]> scores = new HashMap<>();
+
+			for (String term : queryTerms) {
+				Map<Integer, Integer> termPostings = postings.get(term);
+
+				if (termPostings == null) {
+					continue;
+				}
+
+				double idf = Math.log(1 + (double) docs.size() / termPostings.size());
+
+				for (Map.Entry<Integer, Integer> entry : termPostings.entrySet()) {
+					if (boardId != 0 && docs.get(entry.getKey()).boardId != boardId) {
+						continue;
+					}
+
+					double[] score = scores.computeIfAbsent(entry.getKey(), id -> new double[2]);
+					int weight = entry.getValue();
+					score[0]++;
+					score[1] += idf * weight / (weight + 1.2);
+				}
+			}
+
+			List<Integer> ids = new ArrayList<>(scores.keySet());
+			ids.sort((a, b) -> {
+				double[] scoreA = scores.get(a);
+				double[] scoreB = scores.get(b);
+
+				if (scoreA[0] != scoreB[0]) {
+					return Double.compare(scoreB[0], scoreA[0]);
+				}
 
-	public int join(String loginId, String loginPw, String name) {
-		Member oldMember = memberDao.getMemberByLoginId(loginId);
+				if (scoreA[1] != scoreB[1]) {
+					return Double.compare(scoreB[1], scoreA[1]);
+				}
 
-		if (oldMember != null) {
-			return -1;
-		}
+				return b - a;
+			});
 
-		Member member = new Member(loginId, loginPw, name);
-		return memberDao.save(member);
+			return ids.subList(0, Math.min(limit, ids.size()));
+		}
 	}
 
-	public Member getMember(int id) {
-		return memberDao.getMember(id);
+	public synchronized int getDocCount() {
+		return docs.size();
 	}
-}
 
-// Dao
-class ArticleDao {
-	DB db;
+	// 지난번에 부른 뒤로 바뀐 단어/게시물을 넘겨주고 비운다.
+	// 게시물 테이블을 잠근 채로(DB.openSnapshot(atSnapshot)) 부르면 스냅샷까지의 변경과 정확히 맞는다.
+	public synchronized void takeChanges(Set<String> terms, Set<Integer> ids) {
+		if (changedTerms == null) {
+			changedTerms = new HashSet<>();
+			changedIds = new HashSet<>();
+			return;
+		}
 
-	ArticleDao() {
-		db = Factory.getDB();
+		terms.addAll(changedTerms);
+		ids.addAll(changedIds);
+		changedTerms.clear();
+		changedIds.clear();
 	}
 
-	public String getLastArticleId() {
-		return db.getLastArticleId();
+	// 마지막 takeChanges 뒤로 바뀐 게시물(가져가지 않는다)
+	public synchronized void getChangedIds(Set<Integer> ids) {
+		if (changedIds != null) {
+			ids.addAll(changedIds);
+		}
 	}
 
-	public List<Article> getArticlesByBoardCode(String code) {
-		return db.getArticlesByBoardCode(code);
+	// 색인에 있는 모든 단어(잠근 채로 부르므로 action 은 짧게)
+	public synchronized void forEachTerm(Consumer<String> action) {
+		for (String term : postings.keySet()) {
+			action.accept(term);
+		}
 	}
 
-	public List<Board> getBoards() {
-		return db.getBoards();
-	}
+	// 단어마다 게시물 번호와 가중치 : [id, 가중치, id, 가중치, ...]
+	// 같은 시점에 마지막 takeChanges 뒤로 바뀐 게시물도 넘겨준다.(그 게시물의 가중치는 스냅샷과 다를 수 있다)
+	public synchronized void getPostings(Collection<String> terms, Map<String, int[]> result, Set<Integer> changedIds) {
+		for (String term : terms) {
+			Map<Integer, Integer> termPostings = postings.get(term);
 
-	public void articleDelete(String filePath) {
-		db.articleDelete(filePath);
-	}
+			if (termPostings == null) {
+				continue;
+			}
 
-	public void modify(String title, String body, int id) {
-		Article article = getArticlebyId(id);
-		db.modify(title, body, article);
-	}
+			int[] termResult = new int[termPostings.size() * 2];
+			int i = 0;
 
-	public Article getArticlebyId(int id) {
-		return db.getArticlebyId(id);
-	}
+			for (Map.Entry<Integer, Integer> entry : termPostings.entrySet()) {
+				termResult[i++] = entry.getKey();
+				termResult[i++] = entry.getValue();
+			}
 
-	public Board getBoardByCode(String code) {
-		return db.getBoardByCode(code);
-	}
+			result.put(term, termResult);
+		}
 
-	public int saveBoard(Board board) {
-		return db.saveBoard(board);
+		getChangedIds(changedIds);
 	}
 
-	public int save(Article article) {
-		return db.saveArticle(article);
-	}
+	@Override
+	public synchronized void onRowChanged(int id, Article oldRow, Article newRow) {
+		// 읽기 전의 변경은 읽을 때 해시 비교로 반영된다.
+		if (loaded == false) {
+			return;
+		}
 
-	public Board getBoard(int id) {
-		return db.getBoard(id);
+		if (newRow == null) {
+			removeDoc(id);
+		} else {
+			indexDoc(id, newRow);
+		}
 	}
 
-	public List<Article> getArticles() {
-		return db.getArticles();
-	}
+	void ensureLoaded() {
+		// 행 잠금 안에서 알림을 보내는 쓰기와 엇갈리지 않게 테이블 전체 읽기는 잠그기 전에 한다.
+		articleTable.loadAll();
 
-}
+		synchronized (this) {
+			if (loaded) {
+				return;
+			}
 
-class MemberDao {
-	DB db;
+			load();
 
-	MemberDao() {
-		db = Factory.getDB();
-	}
+			Set<Integer> liveIds = new HashSet<>();
 
-	public String getLastMemberId() {
-		return db.getLastMemberId();
-	}
+			for (Article article : articleTable.getRows()) {
+				liveIds.add(article.getId());
+				Doc doc = docs.get(article.getId());
 
-	public Member getMemberByLoginIdAndLoginPw(String loginId, String loginPw) {
-		return db.getMemberByLoginIdAndLoginPw(loginId, loginPw);
-	}
+				if (doc == null || doc.hash != getHash(article)) {
+					indexDoc(article.getId(), article);
+				}
+			}
 
-	public Member getMemberByLoginId(String loginId) {
-		return db.getMemberByLoginId(loginId);
-	}
+			for (Integer id : new ArrayList<>(docs.keySet())) {
+				if (liveIds.contains(id) == false) {
+					removeDoc(id);
+				}
+			}
 
-	public Member getMember(int id) {
-		return db.getMember(id);
+			loaded = true;
+		}
 	}
 
-	public int save(Member member) {
-		return db.saveMember(member);
+	// 내용이 다르면 해시도 다르다고 보고 다시 색인할지 정한다.(BuildManifest.signature 와 같은 내용 해시)
+	private long getHash(Article article) {
+		return BuildManifest.signature(article.getBoardId(), article.getTitle(), article.getBody());
 	}
-}
 
-// DB
-class DB {
-	private Map<String, Table> tables;
+	private void indexDoc(int id, Article article) {
+		removeDoc(id);
 
-	public DB() {
-		String dbDirPath = getDirPath();
-		Util.makeDir(dbDirPath);
+		Map<String, Integer> weights = getTermWeights(article);
 
-		tables = new HashMap<>();
+		Doc doc = new Doc();
+		doc.boardId = article.getBoardId();
+		doc.hash = getHash(article);
+		doc.terms = new String[weights.size()];
+		doc.weights = new int[weights.size()];
 
-		tables.put("article", new Table<Article>(Article.class, dbDirPath));
-		tables.put("board", new Table<Board>(Board.class, dbDirPath));
-		tables.put("member", new Table<Member>(Member.class, dbDirPath));
-	}
-		
+		int i = 0;
 
-	public String getLastArticleId() {
-		return tables.get("article").getLastArticleId();
-	}
+		for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+			doc.terms[i] = entry.getKey();
+			doc.weights[i] = entry.getValue();
+			i++;
+		}
 
-	public String getLastMemberId() {
-		return tables.get("member").getLastMemberId();
+		addDoc(id, doc);
+		changed = true;
 	}
 
-	public List<Article> getArticlesByBoardCode(String code) {
+	private void addDoc(int id, Doc doc) {
+		docs.put(id, doc);
 
-		// Board 코드 free 2 / notice 1
-		Board board = getBoardByCode(code);
+		for (int i = 0; i < doc.terms.length; i++) {
+			postings.computeIfAbsent(doc.terms[i], term -> new HashMap<>()).put(id, doc.weights[i]);
+		}
 
-		// articles 구분없이 전부 articles에 넣어져 있다.
-		List<Article> articles = getArticles();
+		markChanged(id, doc);
+	}
 
-		// 구분을 위한 빈 공간
-		List<Article> newArticles = new ArrayList<>();
+	private void removeDoc(int id) {
+		Doc doc = docs.remove(id);
 
-		// Board 코드와 일치 하는 것 담고
-		for (Article article : articles) {
-			if (article.getBoardId() == board.getId()) {
-				newArticles.add(article);
+		if (doc == null) {
+			return;
+		}
+
+		for (String term : doc.terms) {
+			Map<Integer, Integer> termPostings = postings.get(term);
+			termPostings.remove(id);
+
+			if (termPostings.isEmpty()) {
+				postings.remove(term);
 			}
 		}
 
-		return newArticles;
+		markChanged(id, doc);
+		changed = true;
 	}
 
-	public void articleDelete(String filePath) {
-		tables.get("article").delete(filePath);
+	private void markChanged(int id, Doc doc) {
+		if (changedTerms == null) {
+			return;
+		}
 
+		changedIds.add(id);
+		Collections.addAll(changedTerms, doc.terms);
 	}
 
-	public void modify(String title, String body, Article article) {
-		tables.get("article").modify(title, body, article);
+	// 게시물의 단어와 가중치(정적 사이트 검색 색인도 같은 계산을 쓴다)
+	static Map<String, Integer> getTermWeights(Article article) {
+		Map<String, Integer> weights = new HashMap<>();
+
+		for (String term : tokenize(article.getTitle())) {
+			weights.merge(term, TITLE_WEIGHT, Integer::sum);
+		}
+
+		for (String term : tokenize(article.getBody())) {
+			weights.merge(term, 1, Integer::sum);
+		}
+
+		return weights;
 	}
 
-	public Article getArticlebyId(int id) {
+	// 단어(글자/숫자가 이어진 부분)마다 두 글자씩 겹쳐서 자른다. 예) "자유게시판" -> 자유, 유게, 게시, 시판
+	// 단어 글자는 site_template/article/search.html 의 tokenize 와 같은 [\p{L}\p{Nd}] 이다.(다르면 검색어가 다른 조각을 찾는다)
+	static List<String> tokenize(String text) {
+		List<String> tokens = new ArrayList<>();
 
-		List<Article> articles = getArticles();
+		if (text == null) {
+			return tokens;
+		}
 
-		for (Article article : articles) {
-			if (article.getId() == id) {
-				return article;
+		Matcher matcher = WORD_PATTERN.matcher(text.toLowerCase(Locale.ROOT));
+
+		while (matcher.find()) {
+			String word = matcher.group();
+
+			if (word.length() == 1) {
+				tokens.add(word);
+			}
+
+			for (int j = 0; j + 2 <= word.length(); j++) {
+				tokens.add(word.substring(j, j + 2));
 			}
 		}
 
-		return null;
+		return tokens;
 	}
 
-	public Member getMemberByLoginIdAndLoginPw(String loginId, String loginPw) {
-		List<Member> members = getMembers();
+	private void load() {
+		File file = new File(filePath);
 
-		for (Member member : members) {
-			if (member.getLoginId().equals(loginId) && member.getLoginPw().equals(loginPw)) {
-				return member;
-			}
+		if (file.exists() == false) {
+			return;
 		}
 
-		return null;
-	}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+			if (in.readInt() != FILE_VERSION) {
+				return;
+			}
 
-	public Member getMemberByLoginId(String loginId) {
-		List<Member> members = getMembers();
+			int docCount = in.readInt();
 
-		for (Member member : members) {
-			if (member.getLoginId().equals(loginId)) {
-				return member;
+			for (int i = 0; i < docCount; i++) {
+				int id = in.readInt();
+				Doc doc = new Doc();
+				doc.boardId = in.readInt();
+				doc.hash = in.readLong();
+				int termCount = in.readInt();
+				doc.terms = new String[termCount];
+				doc.weights = new int[termCount];
+
+				for (int j = 0; j < termCount; j++) {
+					doc.terms[j] = in.readUTF();
+					doc.weights[j] = in.readInt();
+				}
+
+				addDoc(id, doc);
 			}
+		} catch (IOException e) {
+			// 깨진 색인은 버리고 다시 만든다.
+			docs.clear();
+			postings.clear();
 		}
-
-		return null;
 	}
 
-	public List<Member> getMembers() {
-		return tables.get("member").getRows();
-	}
+	// 바뀐 것이 있을 때만 임시 파일에 쓰고 바꿔치기
+	public synchronized void save() {
+		if (loaded == false || changed == false) {
+			return;
+		}
 
-	public Board getBoardByCode(String code) {
-		List<Board> boards = getBoards();
+		File tempFile = new File(filePath + ".tmp");
 
-		for (Board board : boards) {
-			if (board.getCode().equals(code)) {
-				return board;
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024))) {
+			out.writeInt(FILE_VERSION);
+			out.writeInt(docs.size());
+
+			for (Map.Entry<Integer, Doc> entry : docs.entrySet()) {
+				Doc doc = entry.getValue();
+				out.writeInt(entry.getKey());
+				out.writeInt(doc.boardId);
+				out.writeLong(doc.hash);
+				out.writeInt(doc.terms.length);
+
+				for (int i = 0; i < doc.terms.length; i++) {
+					out.writeUTF(doc.terms[i]);
+					out.writeInt(doc.weights[i]);
+				}
 			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
 		}
 
-		return null;
+		try {
+			Files.move(tempFile.toPath(), Paths.get(filePath), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			changed = false;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
+}
 
-	public List<Board> getBoards() {
-		return tables.get("board").getRows();
-	}
+// SiteStatistics
+// 회원 수, 게시물 수, 게시판 별/회원 별/날짜 별 게시물 수를 쓰기 알림으로 바로 갱신하는 카운터
+// 통계를 볼 때 게시물 전체를 세지 않아도 된다. 처음 쓸 때 전체를 한번 세서 시작한다.(DB.getStatistics)
+// 알림은 테이블 읽기 잠금 안에서 오고 전체 세기는 쓰기 잠금 안에서 하므로 둘이 겹치지 않는다.
+class SiteStatistics {
+	private volatile boolean loaded;
+	private AtomicInteger memberCount = new AtomicInteger();
+	private AtomicInteger articleCount = new AtomicInteger();
+	// 게시판 번호 -> 게시물 수
+	private Map<Integer, Integer> boardCounts = new ConcurrentHashMap<>();
+	// 회원 번호 -> 작성한 게시물 수
+	private Map<Integer, Integer> memberArticleCounts = new ConcurrentHashMap<>();
+	// 작성 날짜(yyyy-MM-dd) -> 게시물 수
+	private ConcurrentSkipListMap<String, Integer> dailyCounts = new ConcurrentSkipListMap<>();
+
+	// 전체를 세서 새로 만든다.
+	public static SiteStatistics count(List<Article> articles, List<Member> members) {
+		SiteStatistics statistics = new SiteStatistics();
+		statistics.loaded = true;
 
-	public Member getMember(int id) {
-		return (Member) tables.get("member").getRow(id);
+		for (Member member : members) {
+			statistics.onMemberChanged(member.getId(), null, member);
+		}
+
+		for (Article article : articles) {
+			statistics.onArticleChanged(article.getId(), null, article);
+		}
+
+		return statistics;
 	}
 
-	public int saveBoard(Board board) {
-		return tables.get("board").saveRow(board);
+	public boolean isLoaded() {
+		return loaded;
 	}
 
-	public String getDirPath() {
-		return "db";
+	// 지금 값의 복사본(테이블을 잠근 동안 부르면 그 시점의 값), 복사본은 알림을 받지 않는다.
+	public SiteStatistics copy() {
+		SiteStatistics statistics = new SiteStatistics();
+		statistics.reset(this);
+		return statistics;
 	}
 
-	public int saveMember(Member member) {
-		return tables.get("member").saveRow(member);
+	// 전체를 센 결과로 바꾼다.(쓰기 잠금 안에서)
+	public void reset(SiteStatistics statistics) {
+		memberCount.set(statistics.memberCount.get());
+		articleCount.set(statistics.articleCount.get());
+		copy(statistics.boardCounts, boardCounts);
+		copy(statistics.memberArticleCounts, memberArticleCounts);
+		copy(statistics.dailyCounts, dailyCounts);
+		loaded = true;
 	}
 
-	public Board getBoard(int id) {
-		return (Board) tables.get("board").getRow(id);
+	private static <K> void copy(Map<K, Integer> from, Map<K, Integer> to) {
+		to.clear();
+		to.putAll(from);
 	}
 
-	public List<Article> getArticles() {
-		return tables.get("article").getRows();
+	// 전체를 센 결과와 다른 항목(항목 | 카운터 | 전체 조회)
+	public List<String> compare(SiteStatistics statistics) {
+		List<String> differences = new ArrayList<>();
+
+		addDifference(differences, "회원 수", memberCount.get(), statistics.memberCount.get());
+		addDifference(differences, "게시물 수", articleCount.get(), statistics.articleCount.get());
+		addDifferences(differences, "게시판 ", boardCounts, statistics.boardCounts);
+		addDifferences(differences, "회원 게시물 ", memberArticleCounts, statistics.memberArticleCounts);
+		addDifferences(differences, "날짜 ", dailyCounts, statistics.dailyCounts);
+
+		return differences;
 	}
 
-	public int saveArticle(Article article) {
-		return tables.get("article").saveRow(article);
+	private static <K> void addDifferences(List<String> differences, String name, Map<K, Integer> counts,
+			Map<K, Integer> scannedCounts) {
+		Set<K> keys = new TreeSet<>(counts.keySet());
+		keys.addAll(scannedCounts.keySet());
+
+		for (K key : keys) {
+			addDifference(differences, name + key, counts.getOrDefault(key, 0), scannedCounts.getOrDefault(key, 0));
+		}
 	}
 
-	public void backup() {
-		for (String tableName : tables.keySet()) {
-			Table table = tables.get(tableName);
-			table.backup();
+	private static void addDifference(List<String> differences, String name, int count, int scannedCount) {
+		if (count != scannedCount) {
+			differences.add(name + " | " + count + " | " + scannedCount);
 		}
 	}
-}
 
-// Table
-class Table<T> {
-	private Class<T> dataCls;
-	private String tableName;
-	private String tableDirPath;
+	public void onArticleChanged(int id, Article oldRow, Article newRow) {
+		if (loaded == false) {
+			return;
+		}
 
-	public Table(Class<T> dataCls, String dbDirPath) {
-		this.dataCls = dataCls;
-		this.tableName = Util.lcfirst(dataCls.getCanonicalName());
-		this.tableDirPath = dbDirPath + "/" + this.tableName;
+		if (oldRow != null) {
+			addArticle(oldRow, -1);
+		}
 
-		Util.makeDir(tableDirPath);
+		if (newRow != null) {
+			addArticle(newRow, 1);
+		}
 	}
 
-	public String getLastArticleId() {
-		return Util.getFileContents("db/article/lastId.txt");
+	public void onMemberChanged(int id, Member oldRow, Member newRow) {
+		if (loaded == false) {
+			return;
+		}
+
+		memberCount.addAndGet((newRow != null ? 1 : 0) - (oldRow != null ? 1 : 0));
 	}
 
-	public String getLastMemberId() {
-		String lastId = "" + getLastId();
-		return lastId;
+	private void addArticle(Article article, int delta) {
+		articleCount.addAndGet(delta);
+		add(boardCounts, article.getBoardId(), delta);
+		add(memberArticleCounts, article.getMemberId(), delta);
+		add(dailyCounts, getDate(article.getRegDate()), delta);
 	}
 
-	public void modify(String title, String body, Article article) {
-		Dto dto = (Dto) article;
-		T data = (T) article;
+	// 0 이 된 항목은 지운다.(지워진 게시판/회원이 남지 않게)
+	private static <K> void add(Map<K, Integer> counts, K key, int delta) {
+		counts.compute(key, (k, count) -> {
+			int newCount = (count == null ? 0 : count) + delta;
+			return newCount == 0 ? null : newCount;
+		});
+	}
 
-		String FilePath = getRowFilePath(dto.getId());
-		File file = new File(FilePath);
+	private static String getDate(String regDate) {
+		if (regDate == null) {
+			return "";
+		}
 
-		Util.deleteFile(FilePath);
+		return regDate.length() > 10 ? regDate.substring(0, 10) : regDate;
+	}
 
-		article.setTitle(title);
-		article.setBody(body);
-		data = (T) article;
+	public int getMemberCount() {
+		return memberCount.get();
+	}
 
-		String rowFilePath = getRowFilePath(dto.getId());
+	public int getArticleCount() {
+		return articleCount.get();
+	}
 
-		Util.writeJsonFile(rowFilePath, data);
+	public int getArticleCountByBoardId(int boardId) {
+		return boardCounts.getOrDefault(boardId, 0);
 	}
 
-	private String getTableName() {
-		return tableName;
+	public int getArticleCountByMemberId(int memberId) {
+		return memberArticleCounts.getOrDefault(memberId, 0);
 	}
 
-	public int saveRow(T data) {
-		Dto dto = (Dto) data;
+	// 최근 날짜부터 days 일(게시물이 있는 날만)
+	public Map<String, Integer> getRecentDailyCounts(int days) {
+		Map<String, Integer> counts = new LinkedHashMap<>();
 
-		if (dto.getId() == 0) {
-			int lastId = getLastId();
-			int newId = lastId + 1;
-			dto.setId(newId);
-			setLastId(newId);
-		}
+		for (Map.Entry<String, Integer> entry : dailyCounts.descendingMap().entrySet()) {
+			if (counts.size() == days) {
+				break;
+			}
 
-		String rowFilePath = getRowFilePath(dto.getId());
+			counts.put(entry.getKey(), entry.getValue());
+		}
 
-		Util.writeJsonFile(rowFilePath, data);
+		return counts;
+	}
+}
 
-		return dto.getId();
-	};
+// TableIndex
+// 행의 특정 값(키)으로 행 id 를 찾는 해시 인덱스
+// 같은 행의 put/remove 는 Table 의 행 잠금으로 한 스레드씩만 들어온다.
+// 키 별 id 집합의 추가/삭제는 compute 로 묶어서 빈 집합 정리와 겹치지 않게 한다.
+class TableIndex<T> {
+	private Function<T, Object> keyGetter;
+	private ConcurrentHashMap<Object, Set<Integer>> idsByKey;
+	private ConcurrentHashMap<Integer, Object> keyById;
 
-	private String getRowFilePath(int id) {
-		return tableDirPath + "/" + id + ".json";
+	TableIndex(Function<T, Object> keyGetter) {
+		this.keyGetter = keyGetter;
+		this.idsByKey = new ConcurrentHashMap<>();
+		this.keyById = new ConcurrentHashMap<>();
 	}
 
-	private void setLastId(int lastId) {
-		String filePath = getLastIdFilePath();
-		Util.writeFileContents(filePath, lastId);
-	}
+	// 행이 바뀌었을 수 있으므로 이전 키를 지우고 다시 넣는다.
+	public void put(int id, T row) {
+		remove(id);
 
-	private int getLastId() {
-		String filePath = getLastIdFilePath();
+		Object key = keyGetter.apply(row);
 
-		if (Util.isFileExists(filePath) == false) {
-			int lastId = 0;
-			Util.writeFileContents(filePath, lastId);
-			return lastId;
+		if (key == null) {
+			return;
 		}
 
-		return Integer.parseInt(Util.getFileContents(filePath));
-	}
+		idsByKey.compute(key, (k, ids) -> {
+			if (ids == null) {
+				ids = new ConcurrentSkipListSet<>();
+			}
 
-	private String getLastIdFilePath() {
-		return this.tableDirPath + "/lastId.txt";
+			ids.add(id);
+			return ids;
+		});
+		keyById.put(id, key);
 	}
 
-	public T getRow(int id) {
-		return (T) Util.getObjectFromJson(getRowFilePath(id), dataCls);
-	}
+	public void remove(int id) {
+		Object oldKey = keyById.remove(id);
 
-	public void backup() {
+		if (oldKey == null) {
+			return;
+		}
 
+		idsByKey.computeIfPresent(oldKey, (k, ids) -> {
+			ids.remove(id);
+			return ids.isEmpty() ? null : ids;
+		});
 	}
 
-	void delete(String filePath) {
-		Util.deleteFile(filePath);
-	};
-
-	List<T> getRows() {
-		int lastId = getLastId();
-
-		List<T> rows = new ArrayList<>();
+	public Object getKey(T row) {
+		return keyGetter.apply(row);
+	}
 
-		for (int id = 1; id <= lastId; id++) {
-			T row = getRow(id);
+	public Set<Integer> getIds(Object key) {
+		Set<Integer> ids = idsByKey.get(key);
 
-			if (row != null) {
-				rows.add(row);
-			}
+		if (ids == null) {
+			return Collections.emptySet();
 		}
 
-		return rows;
-	};
+		return ids;
+	}
 }
 
 // DTO
@@ -1487,23 +6935,6 @@ class Util {
 		}
 	}
 
-// 사이트 자동생성
-	public static void startAutoSite(boolean workstarted) {
-		new Thread(() -> {
-			while (workstarted) {
-				try {
-					System.out.println("AutoSite 실행 중");
-					Factory.getBuildService().buildSite();
-					Thread.sleep(10000); // 10초 딜레이
-				} catch (InterruptedException e) {
-				}
-			}
-		}).start();
-		if (workstarted == false) {
-			Thread.interrupted();
-		}
-	}
-
 // 현재날짜문장
 	public static String getNowDateStr() {
 		Calendar cal = Calendar.getInstance();
@@ -1549,7 +6980,8 @@ class Util {
 			while (fileStream.read(readBuffer) != -1) {
 			}
 
-			rs = new String(readBuffer);
+			// 템플릿/데이터 파일은 UTF-8(HtmlFileWriter 도 UTF-8 로 쓴다), 플랫폼 기본 문자셋을 쓰지 않는다.
+			rs = new String(readBuffer, StandardCharsets.UTF_8);
 
 			fileStream.close(); // 스트림 닫기
 		} catch (Exception e) {
@@ -1564,7 +6996,7 @@ class Util {
 		BufferedOutputStream bs = null;
 		try {
 			bs = new BufferedOutputStream(new FileOutputStream(filePath));
-			bs.write(contents.getBytes()); // Byte형으로만 넣을 수 있음
+			bs.write(contents.getBytes(StandardCharsets.UTF_8)); // Byte형으로만 넣을 수 있음
 		} catch (Exception e) {
 			e.getStackTrace();
 		} finally {
@@ -1577,16 +7009,15 @@ class Util {
 	}
 
 // Json안에 있는 내용을 가져오기
-	public static Object getObjectFromJson(String filePath, Class cls) {
-		ObjectMapper om = new ObjectMapper();
-		Object obj = null;
+	public static <T> T getObjectFromJson(String filePath, Class<T> cls) {
+		T obj = null;
 		try {
-			obj = om.readValue(new File(filePath), cls);
+			obj = JsonCodec.readFile(filePath, cls);
 		} catch (JsonParseException e) {
 			e.printStackTrace();
 		} catch (JsonMappingException e) {
 			e.printStackTrace();
-		} catch (FileNotFoundException e) {
+		} catch (FileNotFoundException | NoSuchFileException e) {
 
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -1596,9 +7027,8 @@ class Util {
 	}
 
 	public static void writeJsonFile(String filePath, Object obj) {
-		ObjectMapper om = new ObjectMapper();
 		try {
-			om.writeValue(new File(filePath), obj);
+			JsonCodec.writeFile(filePath, obj);
 		} catch (JsonGenerationException e) {
 			e.printStackTrace();
 		} catch (JsonMappingException e) {
@@ -1616,6 +7046,66 @@ class Util {
 	}
 }
 
+// JsonCodec
+// ObjectMapper 는 만들 때마다 직렬화 캐시를 새로 만들기 때문에 하나만 두고 공유한다.
+// DTO 별 ObjectReader/ObjectWriter 도 미리 만들어 두고 재사용한다.(스레드 안전)
+class JsonCodec {
+	private static final int BUFFER_SIZE = 8 * 1024;
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+	private static final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+	private static final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+	static {
+		Class<?>[] dtoClasses = { Article.class, Board.class, Member.class, ArticleReply.class };
+
+		for (Class<?> dtoCls : dtoClasses) {
+			readers.put(dtoCls, objectMapper.readerFor(dtoCls));
+			writers.put(dtoCls, objectMapper.writerFor(dtoCls));
+		}
+	}
+
+	public static ObjectReader getReader(Class<?> cls) {
+		return readers.computeIfAbsent(cls, objectMapper::readerFor);
+	}
+
+	public static ObjectWriter getWriter(Class<?> cls) {
+		return writers.computeIfAbsent(cls, objectMapper::writerFor);
+	}
+
+	// 파일 채널에서 버퍼를 거쳐 바로 읽는다.
+	public static <T> T readFile(String filePath, Class<T> cls) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+				InputStream in = new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE)) {
+			return getReader(cls).readValue(in);
+		}
+	}
+
+	// 파일 채널로 버퍼를 거쳐 바로 쓴다.
+	public static void writeFile(String filePath, Object obj) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+				OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE)) {
+			getWriter(obj.getClass()).writeValue(out, obj);
+		}
+	}
+
+	public static <T> T read(byte[] bytes, Class<T> cls) throws IOException {
+		return getReader(cls).readValue(bytes);
+	}
+
+	public static <T> T read(ByteBuffer data, Class<T> cls) throws IOException {
+		if (data.hasArray()) {
+			return getReader(cls).readValue(data.array(), data.arrayOffset() + data.position(), data.remaining());
+		}
+
+		return getReader(cls).readValue(new ByteBufferBackedInputStream(data));
+	}
+
+	public static byte[] write(Object obj) throws IOException {
+		return getWriter(obj.getClass()).writeValueAsBytes(obj);
+	}
+}
+
 // MySQL DB 연결
 class DBConnection {
 	Connection connection;
@@ -1634,7 +7124,7 @@ class DBConnection {
 			Class.forName(driverName);
 
 			// ② 연결
-			connection = (Connection) DriverManager.getConnection(url, user, password);
+			connection = DriverManager.getConnection(url, user, password);
 		} catch (ClassNotFoundException e) {
 			// `com.mysql.cj.jdbc.Driver` 라는 클래스가 라이브러리로 추가되지 않았다면 오류발생
 			System.out.println("[로드 오류]\n" + e.getStackTrace());